@@ -0,0 +1,106 @@
+package ctbrec.recorder.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iheartradio.m3u8.Encoding;
+import com.iheartradio.m3u8.Format;
+import com.iheartradio.m3u8.ParseException;
+import com.iheartradio.m3u8.PlaylistException;
+import com.iheartradio.m3u8.PlaylistParser;
+import com.iheartradio.m3u8.data.MediaPlaylist;
+import com.iheartradio.m3u8.data.Playlist;
+import com.iheartradio.m3u8.data.TrackData;
+
+import ctbrec.recorder.download.AbstractHlsDownload.LiveStreamingPlaylist;
+import okio.Buffer;
+
+/**
+ * Compares the {@link MediaPlaylistParser} with the open-m3u8 parser, which has been used for the playlist
+ * polling before. A poll of a live playlist usually finds one new segment, so all but the last segment of
+ * the playlist have been seen already. Run with <code>-prof gc</code> to compare the allocations, too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaPlaylistParserBenchmark {
+
+    private static final String PLAYLIST_URL = "https://edge1.stream.highwebmedia.com/live-hls/amlst:model-sd-0123456789abcdef/chunklist_w123456789_b2128000_t64RlBTOjMwLjA=.m3u8";
+    private static final int FIRST_SEQUENCE = 4711;
+
+    /** number of segments in the playlist */
+    @Param({ "6", "30" })
+    public int segments;
+
+    private byte[] playlist;
+    private int nextSegment;
+    private MediaPlaylistParser parser;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:3\n");
+        sb.append("#EXT-X-ALLOW-CACHE:NO\n");
+        sb.append("#EXT-X-TARGETDURATION:2\n");
+        sb.append("#EXT-X-MEDIA-SEQUENCE:").append(FIRST_SEQUENCE).append('\n');
+        for (int i = 0; i < segments; i++) {
+            sb.append(String.format(Locale.US, "#EXTINF:%.3f,\n", 2.0 + (i % 3) * 0.001));
+            sb.append("media_w123456789_b2128000_t64RlBTOjMwLjA=_").append(FIRST_SEQUENCE + i).append(".ts\n");
+        }
+        playlist = sb.toString().getBytes(StandardCharsets.UTF_8);
+        nextSegment = FIRST_SEQUENCE + segments - 1;
+        parser = new MediaPlaylistParser(PLAYLIST_URL);
+    }
+
+    @Benchmark
+    public LiveStreamingPlaylist streamingParser() throws IOException {
+        return parser.parse(new Buffer().write(playlist), nextSegment);
+    }
+
+    /**
+     * The polling like it has been implemented with open-m3u8: the whole playlist is parsed and the URLs of
+     * all segments are resolved, before the known segments are skipped
+     */
+    @Benchmark
+    public LiveStreamingPlaylist openM3u8Parser() throws IOException, ParseException, PlaylistException {
+        PlaylistParser playlistParser = new PlaylistParser(new ByteArrayInputStream(playlist), Format.EXT_M3U, Encoding.UTF_8);
+        Playlist m3u = playlistParser.parse();
+        MediaPlaylist mediaPlaylist = m3u.getMediaPlaylist();
+        LiveStreamingPlaylist lsp = new LiveStreamingPlaylist();
+        lsp.seq = mediaPlaylist.getMediaSequenceNumber();
+        lsp.targetDuration = mediaPlaylist.getTargetDuration();
+        lsp.segmentCount = mediaPlaylist.getTracks().size();
+        int seq = lsp.seq;
+        for (TrackData track : mediaPlaylist.getTracks()) {
+            String uri = track.getUri();
+            if(!uri.startsWith("http")) {
+                uri = PLAYLIST_URL.substring(0, PLAYLIST_URL.lastIndexOf('/') + 1) + uri;
+            }
+            lsp.totalDuration += track.getTrackInfo().duration;
+            if(seq++ >= nextSegment) {
+                lsp.segments.add(uri);
+                lsp.segmentDurations.add(track.getTrackInfo().duration);
+            }
+        }
+        return lsp;
+    }
+}
@@ -0,0 +1,172 @@
+package ctbrec;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Stops sending requests to a host, which is overloaded. If a host answers with 429 or 503 several times in a
+ * row or sends a <code>Retry-After</code> header, the circuit of the host is opened. While it is open, requests
+ * fail immediately with a {@link CircuitOpenException}. Afterwards a single request is let through. If it
+ * succeeds, the circuit is closed again, otherwise it is opened for twice the time.
+ * <p>
+ * Only the hosts, for which the given predicate is true, get a circuit. Requests to other hosts, e.g. the
+ * edges of the CDN, pass unchanged.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(CircuitBreakerInterceptor.class);
+
+    /** number of consecutive overload responses without Retry-After, which open the circuit */
+    private static final int THRESHOLD = 3;
+    private static final long MIN_OPEN_TIME = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_OPEN_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    private Predicate<String> appliesTo;
+    private Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param appliesTo decides, if the requests to a host are guarded by a circuit
+     */
+    public CircuitBreakerInterceptor(Predicate<String> appliesTo) {
+        this.appliesTo = appliesTo;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String host = chain.request().url().host();
+        if(!appliesTo.test(host)) {
+            return chain.proceed(chain.request());
+        }
+        Circuit circuit = circuits.computeIfAbsent(host, Circuit::new);
+        circuit.beforeRequest();
+        Response response = null;
+        try {
+            response = chain.proceed(chain.request());
+        } finally {
+            if(response == null) {
+                // also for runtime exceptions, otherwise a probe would keep the circuit open forever
+                circuit.requestFailed();
+            }
+        }
+        if(response.code() == 429 || response.code() == 503) {
+            circuit.overloaded(parseRetryAfter(response.header("Retry-After")));
+        } else {
+            circuit.succeeded();
+        }
+        return response;
+    }
+
+    /**
+     * @return the time in ms to wait or 0, if the header is missing or invalid
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if(retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            // not a number of seconds, try a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        /** the open time is over, one request is sent to test the host */
+        HALF_OPEN
+    }
+
+    private static class Circuit {
+        private String host;
+        private State state = State.CLOSED;
+        private int overloads = 0;
+        private int trips = 0;
+        private long openUntil = 0;
+        private boolean probing = false;
+
+        Circuit(String host) {
+            this.host = host;
+        }
+
+        synchronized void beforeRequest() throws CircuitOpenException {
+            if(state == State.OPEN) {
+                if(System.currentTimeMillis() < openUntil) {
+                    throw new CircuitOpenException(host, openUntil);
+                }
+                state = State.HALF_OPEN;
+            }
+            if(state == State.HALF_OPEN) {
+                if(probing) {
+                    throw new CircuitOpenException(host, openUntil);
+                }
+                probing = true;
+            }
+        }
+
+        synchronized void succeeded() {
+            if(state != State.CLOSED) {
+                LOG.info("{} is available again, closing circuit", host);
+            }
+            state = State.CLOSED;
+            overloads = 0;
+            trips = 0;
+            probing = false;
+        }
+
+        synchronized void requestFailed() {
+            // a network error doesn't tell, if the host is overloaded, let the next request test it
+            probing = false;
+        }
+
+        synchronized void overloaded(long retryAfter) {
+            overloads++;
+            probing = false;
+            if(state == State.HALF_OPEN || retryAfter > 0 || overloads >= THRESHOLD) {
+                trips++;
+                long openTime = retryAfter > 0 ? retryAfter : Math.min(MAX_OPEN_TIME, MIN_OPEN_TIME << Math.min(trips - 1, 16));
+                openUntil = System.currentTimeMillis() + openTime;
+                state = State.OPEN;
+                overloads = 0;
+                LOG.warn("{} is overloaded, not sending requests for {} ms", host, openTime);
+            }
+        }
+    }
+
+    /**
+     * Thrown instead of sending a request, while the circuit of the host is open
+     */
+    public static class CircuitOpenException extends IOException {
+        private final long retryAt;
+
+        public CircuitOpenException(String host, long retryAt) {
+            super("Circuit for " + host + " is open, requests are blocked");
+            this.retryAt = retryAt;
+        }
+
+        /**
+         * @return the time in ms since the epoch, from which on requests are allowed again
+         */
+        public long getRetryAt() {
+            return retryAt;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ctbrec;
 import java.io.IOException;
 import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,9 +11,13 @@ import org.slf4j.LoggerFactory;
 import ctbrec.ui.CookieJarImpl;
 import ctbrec.ui.HtmlParser;
 import ctbrec.ui.Launcher;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.ConnectionPool;
 import okhttp3.Cookie;
+import okhttp3.Dispatcher;
 import okhttp3.FormBody;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -29,7 +34,19 @@ public class HttpClient {
     private String token;
 
     private HttpClient() {
+        // asynchronous calls of the async download engine go to many streams on the same CDN hosts,
+        // so the per host limit must not be lower than the global limit
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(1, Config.getInstance().getSettings().maxAsyncRequests));
+        dispatcher.setMaxRequestsPerHost(dispatcher.getMaxRequests());
+        // only the requests to the site itself are guarded and paced, the media requests go to the CDN
+        String siteHost = HttpUrl.parse(Launcher.BASE_URI).host();
+        Predicate<String> isSiteHost = host -> host.equals(siteHost) || host.endsWith("." + siteHost);
+        double siteRequestRate = Config.getInstance().getSettings().siteRequestRate;
         client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .addInterceptor(new CircuitBreakerInterceptor(isSiteHost))
+                .addInterceptor(new RateLimitInterceptor(host -> isSiteHost.test(host) ? siteRequestRate : 0))
                 .cookieJar(cookieJar)
                 .connectTimeout(Config.getInstance().getSettings().httpTimeout, TimeUnit.SECONDS)
                 .readTimeout(Config.getInstance().getSettings().httpTimeout, TimeUnit.SECONDS)
@@ -68,6 +85,33 @@ public class HttpClient {
         return resp;
     }
 
+    /**
+     * Executes the request asynchronously on the dispatcher of the underlying OkHttpClient
+     * @return the call, which can be used to cancel the request
+     */
+    public Call enqueue(Request req, Callback callback) {
+        Call call = client.newCall(req);
+        call.enqueue(callback);
+        return call;
+    }
+
+    /**
+     * Cancels all queued and running calls, whose request has been tagged with the given object
+     */
+    public void cancel(Object tag) {
+        Dispatcher dispatcher = client.dispatcher();
+        for (Call call : dispatcher.queuedCalls()) {
+            if(tag.equals(call.request().tag())) {
+                call.cancel();
+            }
+        }
+        for (Call call : dispatcher.runningCalls()) {
+            if(tag.equals(call.request().tag())) {
+                call.cancel();
+            }
+        }
+    }
+
     public boolean login() throws IOException {
         try {
             Request login = new Request.Builder()
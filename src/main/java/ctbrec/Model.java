@@ -4,6 +4,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Model {
+    public static final int MIN_PRIORITY = 0;
+    public static final int MAX_PRIORITY = 100;
+
     private String url;
     private String name;
     private String preview;
@@ -11,6 +14,7 @@ public class Model {
     private List<String> tags = new ArrayList<>();
     private boolean online = false;
     private int streamUrlIndex = -1;
+    private int priority = 50;
 
     public String getUrl() {
         return url;
@@ -68,6 +72,18 @@ public class Model {
         this.streamUrlIndex = streamUrlIndex;
     }
 
+    /**
+     * The priority of the recording, if the bandwidth is limited. Downloads with a low priority are throttled
+     * first. Ranges from {@link #MIN_PRIORITY} to {@link #MAX_PRIORITY}.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
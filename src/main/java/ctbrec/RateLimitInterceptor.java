@@ -0,0 +1,72 @@
+package ctbrec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Paces the requests with a token bucket per host. A request, for which no token is available, waits
+ * until the bucket has been refilled. The bucket holds the tokens of one second, so short bursts are
+ * possible.
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private ToDoubleFunction<String> rateOfHost;
+    private Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param rateOfHost the allowed requests per second for a host. 0 means unlimited.
+     */
+    public RateLimitInterceptor(ToDoubleFunction<String> rateOfHost) {
+        this.rateOfHost = rateOfHost;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String host = chain.request().url().host();
+        double rate = rateOfHost.applyAsDouble(host);
+        if(rate > 0) {
+            long wait = buckets.computeIfAbsent(host, h -> new TokenBucket(rate)).take();
+            if(wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a request to " + host);
+                }
+            }
+        }
+        return chain.proceed(chain.request());
+    }
+
+    private static class TokenBucket {
+        private double rate;
+        private double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double rate) {
+            this.rate = rate;
+            this.capacity = Math.max(1, rate);
+            this.tokens = capacity;
+        }
+
+        /**
+         * Takes a token. If the bucket is empty, the token is reserved in advance.
+         *
+         * @return the time in ms to wait, until the reserved token is available
+         */
+        synchronized long take() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / 1e9 * rate);
+            lastRefill = now;
+            tokens--;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / rate * 1000);
+        }
+    }
+}
@@ -13,11 +13,15 @@ public class Recording {
     private boolean hasPlaylist;
     private STATUS status;
     private int generatingPlaylistProgress = -1;
+    private int queuePosition = -1;
+    private long estimatedCompletion = -1;
     private long sizeInByte;
 
     public static enum STATUS {
         RECORDING,
         GENERATING_PLAYLIST,
+        /** waiting for the post-processing */
+        QUEUED,
         FINISHED,
         DOWNLOADING,
         MERGING
@@ -65,6 +69,28 @@ public class Recording {
         this.generatingPlaylistProgress = progress;
     }
 
+    /**
+     * @return the position in the post-processing queue, starting with 1, or -1, if the recording is not queued
+     */
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    public void setQueuePosition(int queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+
+    /**
+     * @return the estimated time, when the post-processing is complete, in ms since the epoch or -1, if unknown
+     */
+    public long getEstimatedCompletion() {
+        return estimatedCompletion;
+    }
+
+    public void setEstimatedCompletion(long estimatedCompletion) {
+        this.estimatedCompletion = estimatedCompletion;
+    }
+
     public String getPath() {
         return path;
     }
@@ -5,6 +5,17 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Settings {
+
+    public static enum DOWNLOAD_ENGINE {
+        BLOCKING,
+        ASYNC
+    }
+
+    public static enum POST_PROCESSING_ORDER {
+        SMALLEST_FIRST,
+        OLDEST_FIRST
+    }
+
     public boolean localRecording = true;
     public int httpPort = 8080;
     public int httpTimeout = 30;
@@ -17,8 +28,39 @@ public class Settings {
     public List<Model> models = new ArrayList<Model>();
     public boolean automerge = false;
     public boolean automergeKeepSegments = false;
+    public boolean singleFileRecording = false;
+    /** maximum size of the downloaded segments in KiB, which are held back per recording, until the segments before them have been written */
+    public int singleFileReorderBufferSize = 32 * 1024;
     public boolean determineResolution = false;
     public boolean requireAuthentication = false;
     public boolean chooseStreamQuality = false;
+    public int segmentDownloadThreads = 16;
+    public DOWNLOAD_ENGINE downloadEngine = DOWNLOAD_ENGINE.BLOCKING;
+    /** maximum number of asynchronous HTTP requests, which run at the same time, for all streams together */
+    public int maxAsyncRequests = 256;
+    public boolean virtualThreads = false;
+    /** bandwidth limit for all downloads in KiB/s, 0 means unlimited */
+    public int bandwidthLimit = 0;
+    /** switch to a lower rendition, if a download can't keep up with the stream, and back, if it can */
+    public boolean adaptiveStreamSource = false;
+    /** share of additional requests, which may be sent for slow segment requests. 0 disables the hedging */
+    public double hedgedRequestBudget = 0.05;
+    /** number of models, whose online state is checked at the same time */
+    public int onlineCheckThreads = 10;
+    /** time in seconds, after which the online checks of one pass are cancelled */
+    public int onlineCheckDeadline = 60;
+    /** number of listing pages, which are searched for online models, before the remaining models are checked one by one. 0 disables the listing */
+    public int onlineListingPages = 5;
+    /** time in seconds, up to which the interval between the online checks of an offline model grows */
+    public int onlineCheckMaxInterval = 300;
+    /** requests per second, which are sent to the site at most. 0 disables the limit */
+    public double siteRequestRate = 5;
+    /** number of recordings, for which the playlist is generated at the same time */
+    public int postProcessingThreads = 2;
+    /** number of recordings, which are merged at the same time */
+    public int mergeThreads = 1;
+    /** number of recordings, which may wait for the post-processing */
+    public int postProcessingQueueSize = 100;
+    public POST_PROCESSING_ORDER postProcessingOrder = POST_PROCESSING_ORDER.SMALLEST_FIRST;
     public byte[] key = null;
 }
@@ -2,6 +2,7 @@ package ctbrec.recorder;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +28,40 @@ import okhttp3.Response;
 public class Chaturbate {
     private static final transient Logger LOG = LoggerFactory.getLogger(Chaturbate.class);
 
+    /**
+     * The stream info and the master playlist are requested several times within a few seconds, e.g. by the
+     * online check and the start of the download. They are cached for a short time, keyed by model name and
+     * master playlist url respectively.
+     */
+    private static final ExpiringCache<String, StreamInfo> streamInfoCache = new ExpiringCache<>(TimeUnit.SECONDS.toMillis(5));
+    private static final ExpiringCache<String, MasterPlaylist> masterPlaylistCache = new ExpiringCache<>(TimeUnit.SECONDS.toMillis(10));
+
     public static StreamInfo getStreamInfo(Model model, HttpClient client) throws IOException {
+        try {
+            return streamInfoCache.get(model.getName(), () -> loadStreamInfo(model, client));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Removes the cached stream info of the model, e.g. because the stream has ended
+     */
+    public static void invalidate(Model model) {
+        streamInfoCache.invalidate(model.getName());
+    }
+
+    public static ExpiringCache<String, StreamInfo> getStreamInfoCache() {
+        return streamInfoCache;
+    }
+
+    public static ExpiringCache<String, MasterPlaylist> getMasterPlaylistCache() {
+        return masterPlaylistCache;
+    }
+
+    private static StreamInfo loadStreamInfo(Model model, HttpClient client) throws IOException {
         RequestBody body = new FormBody.Builder()
                 .add("room_slug", model.getName())
                 .add("bandwidth", "high")
@@ -80,13 +114,30 @@ public class Chaturbate {
     }
 
     public static MasterPlaylist getMasterPlaylist(StreamInfo streamInfo, HttpClient client) throws IOException, ParseException, PlaylistException {
-        LOG.trace("Loading master playlist {}", streamInfo.url);
-        Request req = new Request.Builder().url(streamInfo.url).build();
-        Response response = client.execute(req);
-        InputStream inputStream = response.body().byteStream();
-        PlaylistParser parser = new PlaylistParser(inputStream, Format.EXT_M3U, Encoding.UTF_8);
-        Playlist playlist = parser.parse();
-        MasterPlaylist master = playlist.getMasterPlaylist();
-        return master;
+        return getMasterPlaylist(streamInfo.url, client);
+    }
+
+    /**
+     * @return the master playlist or null, if the playlist is not a master playlist
+     */
+    public static MasterPlaylist getMasterPlaylist(String url, HttpClient client) throws IOException, ParseException, PlaylistException {
+        try {
+            return masterPlaylistCache.get(url, () -> loadMasterPlaylist(url, client));
+        } catch (IOException | ParseException | PlaylistException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static MasterPlaylist loadMasterPlaylist(String url, HttpClient client) throws IOException, ParseException, PlaylistException {
+        LOG.trace("Loading master playlist {}", url);
+        Request req = new Request.Builder().url(url).build();
+        try (Response response = client.execute(req)) {
+            InputStream inputStream = response.body().byteStream();
+            PlaylistParser parser = new PlaylistParser(inputStream, Format.EXT_M3U, Encoding.UTF_8);
+            Playlist playlist = parser.parse();
+            return playlist.hasMasterPlaylist() ? playlist.getMasterPlaylist() : null;
+        }
     }
 }
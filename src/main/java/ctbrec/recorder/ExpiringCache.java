@@ -0,0 +1,114 @@
+package ctbrec.recorder;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches values for a short time. Concurrent requests for the same key, which is not cached, are served by
+ * a single load: the first thread loads the value and the other threads wait for its result. Failed loads
+ * are not cached.
+ */
+public class ExpiringCache<K, V> {
+
+    /** number of entries, from which on expired entries are removed on a miss */
+    private static final int CLEANUP_SIZE = 256;
+
+    private long ttl;
+    private Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * @param ttl time in ms, for which a loaded value is used
+     */
+    public ExpiringCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return the cached value or the value returned by the loader
+     * @throws Exception the exception thrown by the loader
+     */
+    public V get(K key, Callable<V> loader) throws Exception {
+        Entry<V> entry = entries.get(key);
+        if(entry == null || entry.isExpired(ttl)) {
+            Entry<V> newEntry = new Entry<>();
+            entry = entries.compute(key, (k, current) -> current == null || current.isExpired(ttl) ? newEntry : current);
+            if(entry == newEntry) {
+                misses.increment();
+                cleanup();
+                load(key, newEntry, loader);
+            } else {
+                hits.increment();
+            }
+        } else {
+            hits.increment();
+        }
+
+        try {
+            return entry.value.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception) cause;
+            } else {
+                throw (Error) cause;
+            }
+        }
+    }
+
+    private void load(K key, Entry<V> entry, Callable<V> loader) {
+        try {
+            entry.value.complete(loader.call());
+            entry.loaded = System.currentTimeMillis();
+        } catch (Throwable t) {
+            entries.remove(key, entry);
+            entry.value.completeExceptionally(t);
+        }
+    }
+
+    private void cleanup() {
+        if(entries.size() > CLEANUP_SIZE) {
+            entries.values().removeIf(e -> e.isExpired(ttl));
+        }
+    }
+
+    /**
+     * Removes the value, so that it is loaded again on the next request
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long h = getHits();
+        long m = getMisses();
+        return String.format("%d hits, %d misses (%.1f%% hits), %d entries", h, m, h + m > 0 ? h * 100.0 / (h + m) : 0, entries.size());
+    }
+
+    private static class Entry<V> {
+        private CompletableFuture<V> value = new CompletableFuture<>();
+        /** time the value has been loaded, 0 while it is loading */
+        private volatile long loaded = 0;
+
+        boolean isExpired(long ttl) {
+            return loaded > 0 && System.currentTimeMillis() - loaded > ttl;
+        }
+    }
+}
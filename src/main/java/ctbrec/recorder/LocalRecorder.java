@@ -1,24 +1,34 @@
 package ctbrec.recorder;
 import static ctbrec.Recording.STATUS.FINISHED;
 import static ctbrec.Recording.STATUS.GENERATING_PLAYLIST;
+import static ctbrec.Recording.STATUS.QUEUED;
 import static ctbrec.Recording.STATUS.RECORDING;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,137 +36,206 @@ import org.slf4j.LoggerFactory;
 import com.iheartradio.m3u8.ParseException;
 import com.iheartradio.m3u8.PlaylistException;
 
+import ctbrec.CircuitBreakerInterceptor.CircuitOpenException;
 import ctbrec.Config;
 import ctbrec.HttpClient;
 import ctbrec.Model;
 import ctbrec.Recording;
 import ctbrec.Recording.STATUS;
+import ctbrec.Settings.DOWNLOAD_ENGINE;
+import ctbrec.recorder.ModelRecording.State;
 import ctbrec.recorder.PlaylistGenerator.InvalidPlaylistException;
+import ctbrec.recorder.PostProcessingQueue.QueueStatus;
+import ctbrec.recorder.download.AsyncHlsDownload;
+import ctbrec.recorder.download.BandwidthGovernor;
 import ctbrec.recorder.download.Download;
+import ctbrec.recorder.download.DownloadJournal;
+import ctbrec.recorder.download.DownloadStats;
+import ctbrec.recorder.download.HedgedRequests;
 import ctbrec.recorder.download.HlsDownload;
+import ctbrec.recorder.download.RollingPlaylist;
+import ctbrec.recorder.download.SegmentDownloadScheduler;
+import ctbrec.recorder.download.SegmentWriteMetrics;
+import ctbrec.recorder.download.SingleFileSegmentWriter;
 
 public class LocalRecorder implements Recorder {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(LocalRecorder.class);
-
-    private List<Model> models = Collections.synchronizedList(new ArrayList<>());
-    private Lock lock = new ReentrantLock();
-    private Map<Model, Download> recordingProcesses = Collections.synchronizedMap(new HashMap<>());
-    private Map<File, PlaylistGenerator> playlistGenerators = new HashMap<>();
-    private Map<File, SegmentMerger> segmentMergers = new HashMap<>();
+    /** time in ms, which the downloads get to terminate on shutdown */
+    private static final long SHUTDOWN_TIMEOUT = 2000;
+    /** time in ms between the online checks of models, which have been online recently */
+    private static final long ONLINE_CHECK_INTERVAL = 10000;
+    /** time in ms between the saves of the online history */
+    private static final long ONLINE_HISTORY_SAVE_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    private Map<Model, ModelRecording> recordings = new ConcurrentHashMap<>();
+    private Map<File, PlaylistGenerator> playlistGenerators = new ConcurrentHashMap<>();
+    private Map<File, SegmentMerger> segmentMergers = new ConcurrentHashMap<>();
+    private PostProcessingQueue postProcessing;
     private Config config;
-    private ProcessMonitor processMonitor;
     private OnlineMonitor onlineMonitor;
+    private OnlineCheckSchedule onlineCheckSchedule;
+    private OnlineHistory onlineHistory;
+    private Thread onlineMonitorThread;
     private PlaylistGeneratorTrigger playlistGenTrigger;
     private HttpClient client = HttpClient.getInstance();
+    private SegmentDownloadScheduler segmentScheduler;
+    private BandwidthGovernor bandwidthGovernor;
+    private HedgedRequests hedgedRequests;
+    private ScheduledExecutorService downloadTimer;
+    /**
+     * runs the finishing and restarting of recordings, after their download has terminated, and the start of
+     * asynchronous downloads
+     */
+    private ExecutorService terminationExecutor;
     private volatile boolean recording = true;
     private List<File> deleteInProgress = Collections.synchronizedList(new ArrayList<>());
+    /** finished recordings, which haven't been accepted by the full post-processing queue yet */
+    private Set<File> postProcessingPending = ConcurrentHashMap.newKeySet();
 
     public LocalRecorder(Config config) {
         this.config = config;
+        onlineHistory = OnlineHistory.load();
+        onlineCheckSchedule = new OnlineCheckSchedule(ONLINE_CHECK_INTERVAL, config.getSettings().onlineCheckMaxInterval * 1000L, onlineHistory);
         config.getSettings().models.stream().forEach((m) -> {
             m.setOnline(false);
-            models.add(m);
+            recordings.put(m, new ModelRecording(m));
+            onlineCheckSchedule.add(m);
         });
 
         recording = true;
-        processMonitor = new ProcessMonitor();
-        processMonitor.start();
+        segmentScheduler = new SegmentDownloadScheduler(config.getSettings().segmentDownloadThreads);
+        bandwidthGovernor = new BandwidthGovernor(config.getSettings().bandwidthLimit * 1024L);
+        downloadTimer = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r);
+            t.setName("DownloadTimer");
+            t.setDaemon(true);
+            return t;
+        });
+        hedgedRequests = new HedgedRequests(client, downloadTimer, config.getSettings().hedgedRequestBudget);
+        terminationExecutor = Threads.newTaskExecutor("DownloadTerminated");
+        postProcessing = new PostProcessingQueue(config.getSettings().postProcessingThreads, config.getSettings().mergeThreads,
+                config.getSettings().postProcessingQueueSize, config.getSettings().postProcessingOrder);
+        downloadTimer.scheduleAtFixedRate(this::logStats, 1, 1, TimeUnit.MINUTES);
         onlineMonitor = new OnlineMonitor();
-        onlineMonitor.start();
+        onlineMonitorThread = Threads.newThread("OnlineMonitor", onlineMonitor);
+        onlineMonitorThread.start();
         playlistGenTrigger = new PlaylistGeneratorTrigger();
-        playlistGenTrigger.start();
+        Threads.newThread("PlaylistGeneratorTrigger", playlistGenTrigger).start();
 
         LOG.debug("Recorder initialized");
-        LOG.info("Models to record: {}", models);
+        LOG.info("Models to record: {}", recordings.keySet());
         LOG.info("Saving recordings in {}", config.getSettings().recordingsDir);
+        LOG.info("Using {} download engine", config.getSettings().downloadEngine);
+        if(Threads.isVirtualThreadsEnabled()) {
+            LOG.info("Running blocking tasks on virtual threads");
+        }
     }
 
     @Override
     public void startRecording(Model model) throws IOException {
-        lock.lock();
-        if(!models.contains(model)) {
+        if(recordings.putIfAbsent(model, new ModelRecording(model)) == null) {
             LOG.info("Model {} added", model);
-            models.add(model);
-            config.getSettings().models.add(model);
-            onlineMonitor.interrupt();
+            synchronized (config.getSettings().models) {
+                config.getSettings().models.add(model);
+            }
+            onlineCheckSchedule.add(model);
+            onlineMonitor.wakeUp();
         }
-        lock.unlock();
     }
 
     @Override
     public void stopRecording(Model model) throws IOException {
-        lock.lock();
-        try {
-            if (models.contains(model)) {
-                models.remove(model);
+        ModelRecording rec = recordings.remove(model);
+        if(rec != null) {
+            synchronized (config.getSettings().models) {
                 config.getSettings().models.remove(model);
-                if(recordingProcesses.containsKey(model)) {
-                    stopRecordingProcess(model);
-                }
-                LOG.info("Model {} removed", model);
             }
-        } finally {
-            lock.unlock();
+            onlineCheckSchedule.remove(model);
+            if(rec.remove() == State.RECORDING) {
+                stopRecordingProcess(rec);
+            }
+            LOG.info("Model {} removed", model);
         }
     }
 
-    private void startRecordingProcess(Model model) throws IOException {
-        lock.lock();
-        LOG.debug("Waiting for lock to restart recording for {}", model.getName());
-        try {
-            LOG.debug("Restart recording for model {}", model.getName());
-            if(recordingProcesses.containsKey(model)) {
-                LOG.error("A recording for model {} is already running", model);
-                return;
-            }
+    @Override
+    public void setPriority(Model model, int priority) {
+        ModelRecording rec = recordings.get(model);
+        if(rec != null) {
+            // the running download reads the priority of this instance
+            rec.getModel().setPriority(priority);
+            LOG.info("Priority of model {} set to {}", model, priority);
+        }
+    }
 
-            if(!models.contains(model)) {
-                LOG.info("Model {} has been removed. Restarting of recording cancelled.", model);
-                return;
+    /**
+     * Starts the download for a model, which is in state CHECKING
+     */
+    private void startRecordingProcess(ModelRecording rec) {
+        Model model = rec.getModel();
+        LOG.debug("Restart recording for model {}", model.getName());
+        Download download = createDownload();
+        rec.setDownload(download);
+        if(!rec.transition(State.CHECKING, State.RECORDING)) {
+            LOG.info("Model {} has been removed. Restarting of recording cancelled.", model);
+            return;
+        }
+        download.getTermination().thenRunAsync(() -> downloadTerminated(rec, download), terminationExecutor);
+        Runnable start = () -> {
+            try {
+                download.start(model, config);
+            } catch (IOException e) {
+                LOG.error("Download failed. Download alive: {}", download.isAlive(), e);
             }
-
-            Download download = new HlsDownload(client);
-            recordingProcesses.put(model, download);
-            new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        download.start(model, config);
-                    } catch (IOException e) {
-                        LOG.error("Download failed. Download alive: {}", download.isAlive(), e);
-                    }
-                }
-            }.start();
-        } finally {
-            lock.unlock();
+        };
+        if(download instanceof AsyncHlsDownload) {
+            // the asynchronous download returns after its setup, it doesn't need a thread of its own
+            terminationExecutor.execute(start);
+        } else {
+            Threads.newThread("Download " + model.getName(), start).start();
         }
     }
 
-    private void stopRecordingProcess(Model model) throws IOException {
-        lock.lock();
-        try {
-            Download download = recordingProcesses.get(model);
-            download.stop();
-            recordingProcesses.remove(model);
-        } finally {
-            lock.unlock();
+    private Download createDownload() {
+        if(config.getSettings().downloadEngine == DOWNLOAD_ENGINE.ASYNC) {
+            return new AsyncHlsDownload(client, bandwidthGovernor, hedgedRequests, downloadTimer, segmentScheduler);
+        } else {
+            return new HlsDownload(client, bandwidthGovernor, hedgedRequests, segmentScheduler);
         }
     }
 
+    private void stopRecordingProcess(ModelRecording rec) {
+        Download download = rec.getDownload();
+        // post-process, as soon as the download has terminated, instead of waiting for the playlist generator trigger
+        download.stop().thenRun(() -> {
+            File directory = download.getDirectory();
+            if(directory != null) {
+                finishRecording(directory);
+            }
+        });
+    }
+
     @Override
     public boolean isRecording(Model model) {
-        lock.lock();
-        try {
-            return models.contains(model);
-        } finally {
-            lock.unlock();
-        }
+        return recordings.containsKey(model);
     }
 
     @Override
     public List<Model> getModelsRecording() {
-        return Collections.unmodifiableList(models);
+        return Collections.unmodifiableList(new ArrayList<>(recordings.keySet()));
+    }
+
+    @Override
+    public List<DownloadStats> getDownloadStats() {
+        List<DownloadStats> stats = new ArrayList<>();
+        for (ModelRecording rec : recordings.values()) {
+            Download download = rec.getDownload();
+            if(rec.getState() == State.RECORDING && download != null) {
+                stats.add(download.getStats());
+            }
+        }
+        return stats;
     }
 
     @Override
@@ -165,29 +244,52 @@ public class LocalRecorder implements Recorder {
         recording = false;
         LOG.debug("Stopping monitor threads");
         onlineMonitor.running = false;
-        processMonitor.running = false;
+        onlineMonitorThread.interrupt();
         playlistGenTrigger.running = false;
         LOG.debug("Stopping all recording processes");
-        stopRecordingProcesses();
+        List<CompletableFuture<Void>> terminations = stopRecordingProcesses();
+        try {
+            CompletableFuture.allOf(terminations.toArray(new CompletableFuture<?>[0])).get(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Not all downloads terminated within {} ms", SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error("Download terminated with an error", e.getCause());
+        }
+        segmentScheduler.shutdown();
+        downloadTimer.shutdownNow();
+        postProcessing.shutdown();
+        saveOnlineHistory();
     }
 
-    private void stopRecordingProcesses() {
-        lock.lock();
+    private void saveOnlineHistory() {
         try {
-            for (Model model : models) {
-                Download recordingProcess = recordingProcesses.get(model);
-                if(recordingProcess != null) {
-                    try {
-                        recordingProcess.stop();
-                        LOG.debug("Stopped recording for {}", model);
-                    } catch (Exception e) {
-                        LOG.error("Couldn't stop recording for model {}", model, e);
-                    }
+            onlineHistory.save();
+        } catch (IOException e) {
+            LOG.error("Couldn't save online history", e);
+        }
+    }
+
+    /**
+     * Stops all downloads. The journals are not finished, so that the downloads can be resumed after a restart.
+     *
+     * @return the futures, which complete, when the downloads have terminated
+     */
+    private List<CompletableFuture<Void>> stopRecordingProcesses() {
+        List<CompletableFuture<Void>> terminations = new ArrayList<>();
+        for (ModelRecording rec : recordings.values()) {
+            Download download = rec.getDownload();
+            if(rec.getState() == State.RECORDING && download != null) {
+                try {
+                    terminations.add(download.stop());
+                    LOG.debug("Stopped recording for {}", rec.getModel());
+                } catch (Exception e) {
+                    LOG.error("Couldn't stop recording for model {}", rec.getModel(), e);
                 }
             }
-        } finally {
-            lock.unlock();
         }
+        return terminations;
     }
 
     private boolean checkIfOnline(Model model) throws IOException {
@@ -195,102 +297,127 @@ public class LocalRecorder implements Recorder {
         return Objects.equals(streamInfo.room_status, "public");
     }
 
-    private void tryRestartRecording(Model model) {
+    private void tryRestartRecording(ModelRecording rec) {
         if(!recording) {
             // recorder is not in recording state
             return;
         }
 
+        if(!rec.transition(State.IDLE, State.CHECKING)) {
+            // removed or checked by the online monitor at the moment
+            return;
+        }
+        Model model = rec.getModel();
         try {
-            lock.lock();
-            boolean modelInRecordingList = models.contains(model);
-            boolean online = checkIfOnline(model);
-            if(modelInRecordingList && online) {
+            if(checkIfOnline(model)) {
                 LOG.info("Restarting recording for model {}", model);
-                recordingProcesses.remove(model);
-                startRecordingProcess(model);
+                startRecordingProcess(rec);
+                return;
             }
         } catch (Exception e) {
             LOG.error("Couldn't restart recording for model {}", model);
-        } finally {
-            lock.unlock();
         }
+        rec.transition(State.CHECKING, State.IDLE);
     }
 
-    private class ProcessMonitor extends Thread {
-        private volatile boolean running = false;
-
-        public ProcessMonitor() {
-            setName("ProcessMonitor");
-            setDaemon(true);
+    /**
+     * Finishes the recording, after the download has terminated, and restarts it, if the model is still online.
+     * If the download has failed shortly after its start, the restart is delayed.
+     */
+    private void downloadTerminated(ModelRecording rec, Download download) {
+        if(!recording) {
+            // recorder shuts down, the downloads will be resumed after a restart
+            return;
         }
-
-        @Override
-        public void run() {
-            running = true;
-            while(running) {
-                lock.lock();
-                try {
-                    List<Model> restart = new ArrayList<Model>();
-                    for (Iterator<Entry<Model,Download>> iterator = recordingProcesses.entrySet().iterator(); iterator.hasNext();) {
-                        Entry<Model, Download> entry = iterator.next();
-                        Model m = entry.getKey();
-                        Download d = entry.getValue();
-                        if(!d.isAlive()) {
-                            LOG.debug("Recording terminated for model {}", m.getName());
-                            iterator.remove();
-                            restart.add(m);
-                            finishRecording(d.getDirectory());
-                        }
-                    }
-                    for (Model m : restart) {
-                        tryRestartRecording(m);
-                    }
-                }
-                finally {
-                    lock.unlock();
-                }
-
-                try {
-                    if(running) Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    LOG.error("Couldn't sleep", e);
+        // if the model has been removed in the meantime, stopRecording takes care of the download
+        if(rec.transition(State.RECORDING, State.POST_PROCESSING)) {
+            LOG.debug("Recording terminated for model {}", rec.getModel().getName());
+            // the stream has probably ended, don't use the cached stream info for the restart
+            Chaturbate.invalidate(rec.getModel());
+            if(download.getDirectory() != null) {
+                finishRecording(download.getDirectory());
+            }
+            // determined before the model becomes idle, so that the online monitor doesn't start it too early
+            long restartDelay = rec.downloadTerminated();
+            if(rec.transition(State.POST_PROCESSING, State.IDLE)) {
+                if(restartDelay > 0) {
+                    LOG.debug("Download for model {} failed shortly after its start, restarting in {} ms", rec.getModel().getName(), restartDelay);
+                    scheduleRestart(rec, restartDelay);
+                } else {
+                    tryRestartRecording(rec);
                 }
             }
-            LOG.debug(getName() + " terminated");
+        }
+    }
+
+    private void scheduleRestart(ModelRecording rec, long delay) {
+        try {
+            downloadTimer.schedule(() -> terminationExecutor.execute(() -> tryRestartRecording(rec)), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the recorder shuts down
+        }
+    }
+
+    private void logStats() {
+        LOG.debug("Segment downloads: {}", segmentScheduler);
+        SegmentWriteMetrics.getInstance().sample();
+        LOG.debug("Segment persistence: {}", SegmentWriteMetrics.getInstance());
+        LOG.debug("Bandwidth: {}", bandwidthGovernor);
+        LOG.debug("Segment requests: {}", hedgedRequests);
+        LOG.debug("Stream info cache: {}", Chaturbate.getStreamInfoCache());
+        LOG.debug("Post-processing: {}", postProcessing);
+        LOG.debug("Master playlist cache: {}", Chaturbate.getMasterPlaylistCache());
+        for (DownloadStats stats : getDownloadStats()) {
+            LOG.debug("Download {}", stats);
         }
     }
 
     private void finishRecording(File directory) {
-        Thread t = new Thread() {
-            @Override
-            public void run() {
-                boolean local = Config.getInstance().getSettings().localRecording;
-                boolean automerge = Config.getInstance().getSettings().automerge;
-                generatePlaylist(directory);
-                if(local && automerge) {
-                    File mergedFile = merge(directory);
-                    if(mergedFile != null && mergedFile.exists() && mergedFile.length() > 0) {
-                        LOG.debug("Merged file {}", mergedFile.getAbsolutePath());
-                        if (!Config.getInstance().getSettings().automergeKeepSegments) {
-                            try {
-                                LOG.debug("Deleting directory {}", directory);
-                                delete(directory, mergedFile);
-                            } catch (IOException e) {
-                                LOG.error("Couldn't delete directory {}", directory, e);
-                            }
+        // mark the journal before a restarted download could try to resume the recording
+        try {
+            DownloadJournal.markFinished(directory);
+        } catch (IOException e) {
+            LOG.error("Couldn't finish download journal in {}", directory, e);
+        }
+        boolean local = Config.getInstance().getSettings().localRecording;
+        boolean automerge = Config.getInstance().getSettings().automerge;
+        Runnable merge = null;
+        if(local && automerge) {
+            merge = () -> {
+                File mergedFile = merge(directory);
+                if(mergedFile != null && mergedFile.exists() && mergedFile.length() > 0) {
+                    LOG.debug("Merged file {}", mergedFile.getAbsolutePath());
+                    if (!Config.getInstance().getSettings().automergeKeepSegments) {
+                        try {
+                            LOG.debug("Deleting directory {}", directory);
+                            delete(directory, mergedFile);
+                        } catch (IOException e) {
+                            LOG.error("Couldn't delete directory {}", directory, e);
                         }
-                    } else {
-                        LOG.error("Merged file not found {}", mergedFile);
                     }
+                } else {
+                    LOG.error("Merged file not found {}", mergedFile);
                 }
-            }
-        };
-        t.setDaemon(true);
-        t.setName("Postprocessing" + directory.toString());
-        t.start();
+            };
+        }
+        if(postProcessing.submit(directory, getStartTime(directory), getSize(directory), () -> generatePlaylist(directory), merge)) {
+            postProcessingPending.remove(directory);
+        } else if(postProcessingPending.add(directory)) {
+            // the playlist generator trigger submits the recording again
+            LOG.info("Post-processing queue is full, {} will be post-processed later", directory);
+        }
     }
 
+    /**
+     * @return the start time of a recording, which is encoded in the name of its directory
+     */
+    private long getStartTime(File recDir) {
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd_HH-mm").parse(recDir.getName()).getTime();
+        } catch (java.text.ParseException e) {
+            return recDir.lastModified();
+        }
+    }
 
     private File merge(File recDir) {
         SegmentMerger segmentMerger = new SegmentMerger();
@@ -326,58 +453,180 @@ public class LocalRecorder implements Recorder {
         }
     }
 
-    private class OnlineMonitor extends Thread {
+    /**
+     * Checks the online state of the models, which are not recorded at the moment and whose check is due
+     * according to the {@link OnlineCheckSchedule}. The checks of one pass run in parallel on a bounded
+     * number of threads. Checks, which haven't finished at the end of the pass, are cancelled and count as
+     * failed. While a model is checked, it is in state CHECKING, so that it isn't started by another thread.
+     * <p>
+     * Before the models are checked one by one, the listing pages of the site are searched for the models.
+     * The models, which have been found there, are started without a check of their own. Rooms in a private or
+     * away show are listed, too, but the download checks the room status before it creates a recording.
+     * Only the models, which haven't been found on the listing pages, are checked with a request of their own.
+     * <p>
+     * The monitor is woken up with {@link #wakeUp()}, when a model has been added. It is not interrupted, because
+     * that would abort the requests of the pass.
+     */
+    private class OnlineMonitor implements Runnable {
         private volatile boolean running = false;
-
-        public OnlineMonitor() {
-            setName("OnlineMonitor");
-            setDaemon(true);
+        private ExecutorService executor;
+        private OnlineListing listing = new OnlineListing(client, config.getSettings().onlineListingPages);
+        private long lastHistorySave = System.currentTimeMillis();
+        private Object wakeUpLock = new Object();
+        private boolean wakeUpRequested = false;
+
+        OnlineMonitor() {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, config.getSettings().onlineCheckThreads),
+                    (r) -> Threads.newThread("OnlineCheck-" + threadNumber.getAndIncrement(), r));
         }
 
         @Override
         public void run() {
             running = true;
             while(running) {
-                lock.lock();
+                List<Model> offline = new ArrayList<>();
+                for (Model model : onlineCheckSchedule.takeDue()) {
+                    ModelRecording rec = recordings.get(model);
+                    if(rec != null && !rec.isRestartDelayed() && rec.transition(State.IDLE, State.CHECKING)) {
+                        offline.add(model);
+                    } else {
+                        // recorded, restarted or waiting for a delayed restart, check the model again soon
+                        onlineCheckSchedule.skipped(model);
+                    }
+                }
+
+                long start = System.currentTimeMillis();
+                int listed = 0;
+                if(config.getSettings().onlineListingPages > 0 && !offline.isEmpty()) {
+                    try {
+                        Set<Model> online = listing.findOnline(offline, config.getSettings().username);
+                        for (Model model : online) {
+                            updateOnlineState(model, true);
+                            onlineCheckSchedule.checked(model, true);
+                        }
+                        offline.removeAll(online);
+                        listed = online.size();
+                    } catch (CircuitOpenException e) {
+                        LOG.debug("Couldn't load listing pages: {}", e.getMessage());
+                    } catch (InterruptedIOException e) {
+                        // the recorder shuts down, don't fall back to checking all models
+                        for (Model model : offline) {
+                            updateOnlineState(model, false);
+                            onlineCheckSchedule.add(model);
+                        }
+                        continue;
+                    } catch (Exception e) {
+                        LOG.warn("Couldn't load listing pages, checking all models one by one", e);
+                    }
+                }
+
+                List<Callable<Boolean>> checks = new ArrayList<>(offline.size());
+                for (Model model : offline) {
+                    checks.add(() -> {
+                        LOG.trace("Checking online state for {}", model);
+                        return checkIfOnline(model);
+                    });
+                }
+
+                List<Future<Boolean>> results;
                 try {
-                    for (Model model : models) {
-                        if(!recordingProcesses.containsKey(model)) {
-                            try {
-                                LOG.trace("Checking online state for {}", model);
-                                boolean isOnline = checkIfOnline(model);
-                                boolean wasOnline = model.isOnline();
-                                model.setOnline(isOnline);
-                                if(wasOnline != isOnline && isOnline) {
-                                    LOG.info("Model {}'s room back to public. Starting recording", model);
-                                    startRecordingProcess(model);
-                                }
-                            } catch (Exception e) {
-                                LOG.error("Couldn't check if model {} is online", model.getName(), e);
-                                model.setOnline(false);
+                    results = executor.invokeAll(checks, config.getSettings().onlineCheckDeadline, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // the recorder shuts down
+                    LOG.trace("Online check interrupted");
+                    for (Model model : offline) {
+                        updateOnlineState(model, false);
+                        onlineCheckSchedule.add(model);
+                    }
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+
+                int timedOut = 0;
+                int blocked = 0;
+                for (int i = 0; i < results.size() && running; i++) {
+                    Model model = offline.get(i);
+                    Future<Boolean> result = results.get(i);
+                    boolean online = false;
+                    if(result.isCancelled()) {
+                        timedOut++;
+                    } else {
+                        try {
+                            online = result.get();
+                        } catch (ExecutionException e) {
+                            if(e.getCause() instanceof CircuitOpenException) {
+                                // the site is overloaded, the check fails without a request and is repeated later
+                                blocked++;
+                            } else {
+                                LOG.error("Couldn't check if model {} is online", model.getName(), e.getCause());
                             }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
                         }
                     }
-                } finally {
-                    lock.unlock();
+                    updateOnlineState(model, online);
+                    onlineCheckSchedule.checked(model, online);
+                }
+                if(blocked > 0) {
+                    LOG.info("Online check for {} of {} models has been skipped, because the site is overloaded", blocked, offline.size());
+                }
+                if(timedOut > 0) {
+                    LOG.warn("Online check for {} of {} models didn't finish within {} s", timedOut, offline.size(), config.getSettings().onlineCheckDeadline);
+                }
+                LOG.trace("Found {} models on the listing pages, checked {} models one by one in {} ms", listed, offline.size(), System.currentTimeMillis() - start);
+                if(System.currentTimeMillis() - lastHistorySave > ONLINE_HISTORY_SAVE_INTERVAL) {
+                    saveOnlineHistory();
+                    lastHistorySave = System.currentTimeMillis();
                 }
 
                 try {
-                    if(running) Thread.sleep(10000);
+                    long wait = onlineCheckSchedule.getTimeToNextCheck();
+                    synchronized (wakeUpLock) {
+                        if(running && wait > 0 && !wakeUpRequested) {
+                            wakeUpLock.wait(wait);
+                        }
+                        wakeUpRequested = false;
+                    }
                 } catch (InterruptedException e) {
                     LOG.trace("Sleep interrupted");
                 }
             }
-            LOG.debug(getName() + " terminated");
+            executor.shutdownNow();
+            LOG.debug(Thread.currentThread().getName() + " terminated");
         }
-    }
 
-    private class PlaylistGeneratorTrigger extends Thread {
-        private volatile boolean running = false;
+        /**
+         * Starts the next pass, as soon as the current one is finished
+         */
+        void wakeUp() {
+            synchronized (wakeUpLock) {
+                wakeUpRequested = true;
+                wakeUpLock.notifyAll();
+            }
+        }
 
-        public PlaylistGeneratorTrigger() {
-            setName("PlaylistGeneratorTrigger");
-            setDaemon(true);
+        /**
+         * Applies the result of the check of a model in state CHECKING
+         */
+        private void updateOnlineState(Model model, boolean isOnline) {
+            model.setOnline(isOnline);
+            ModelRecording rec = recordings.get(model);
+            if(rec == null) {
+                return;
+            }
+            if(isOnline && recording) {
+                LOG.info("Model {}'s room back to public. Starting recording", model);
+                startRecordingProcess(rec);
+            } else {
+                rec.transition(State.CHECKING, State.IDLE);
+            }
         }
+    }
+
+    private class PlaylistGeneratorTrigger implements Runnable {
+        private volatile boolean running = false;
 
         @Override
         public void run() {
@@ -385,19 +634,22 @@ public class LocalRecorder implements Recorder {
             while(running) {
                 try {
                     List<Recording> recs = getRecordings();
+                    File recordingsDir = new File(config.getSettings().recordingsDir);
                     for (Recording rec : recs) {
-                        if(rec.getStatus() == RECORDING) {
+                        File recDir = new File(recordingsDir, rec.getPath());
+                        if(rec.getStatus() == RECORDING || postProcessingPending.contains(recDir)) {
                             boolean recordingProcessFound = false;
-                            File recordingsDir = new File(config.getSettings().recordingsDir);
-                            File recDir = new File(recordingsDir, rec.getPath());
-                            for(Entry<Model, Download> download : recordingProcesses.entrySet()) {
-                                if(download.getValue().getDirectory().equals(recDir)) {
+                            for(ModelRecording modelRecording : recordings.values()) {
+                                Download download = modelRecording.getDownload();
+                                if(modelRecording.getState() == State.RECORDING && download != null && recDir.equals(download.getDirectory())) {
                                     recordingProcessFound = true;
                                 }
                             }
                             if(!recordingProcessFound) {
                                 if(deleteInProgress.contains(recDir)) {
                                     LOG.debug("{} is being deleted. Not going to generate a playlist", recDir);
+                                } else if(DownloadJournal.isResumable(recDir)) {
+                                    LOG.debug("The download in {} might be resumed. Not going to generate a playlist yet", recDir);
                                 } else {
                                     finishRecording(recDir);
                                 }
@@ -412,7 +664,7 @@ public class LocalRecorder implements Recorder {
                     LOG.error("Unexpected error in playlist trigger thread", e);
                 }
             }
-            LOG.debug(getName() + " terminated");
+            LOG.debug(Thread.currentThread().getName() + " terminated");
         }
     }
 
@@ -446,28 +698,32 @@ public class LocalRecorder implements Recorder {
                         recording.setStartDate(Instant.ofEpochMilli(startDate.getTime()));
                         recording.setPath(recording.getModelName() + "/" + rec.getName());
                         recording.setSizeInByte(getSize(rec));
-                        File playlist = new File(rec, "playlist.m3u8");
+                        File playlist = new File(rec, RollingPlaylist.FILE);
                         recording.setHasPlaylist(playlist.exists());
-                        if(recording.hasPlaylist()) {
+                        QueueStatus queueStatus = postProcessing.getStatus(rec);
+                        if(queueStatus != null) {
+                            recording.setStatus(QUEUED);
+                            recording.setProgress(0);
+                            recording.setQueuePosition(queueStatus.position);
+                            recording.setEstimatedCompletion(queueStatus.estimatedCompletion);
+                        } else if(postProcessingPending.contains(rec)) {
+                            // waits for a place in the post-processing queue, it has no position yet
+                            recording.setStatus(QUEUED);
+                            recording.setProgress(0);
+                        } else if(playlistGenerators.containsKey(rec) || segmentMergers.containsKey(rec)) {
+                            // the playlist exists already, while the recording is being merged
+                            setPostProcessingStatus(recording, rec);
+                        } else if(RollingPlaylist.isFinished(rec)) {
+                            // the playlist is written while recording, it is finished with the end tag
                             recording.setStatus(FINISHED);
                         } else {
-                            // this might be a merged recording
-                            if(Recording.isMergedRecording(rec)) {
+                            // this might be a merged recording. single file recordings are merged from the start,
+                            // but they are not finished before the playlist has been generated from the index
+                            boolean singleFileRecording = new File(rec, SingleFileSegmentWriter.INDEX_FILE).exists();
+                            if(Recording.isMergedRecording(rec) && !singleFileRecording) {
                                 recording.setStatus(FINISHED);
                             } else {
-                                PlaylistGenerator playlistGenerator = playlistGenerators.get(rec);
-                                if(playlistGenerator != null) {
-                                    recording.setStatus(GENERATING_PLAYLIST);
-                                    recording.setProgress(playlistGenerator.getProgress());
-                                } else {
-                                    SegmentMerger merger = segmentMergers.get(rec);
-                                    if(merger != null) {
-                                        recording.setStatus(STATUS.MERGING);
-                                        recording.setProgress(merger.getProgress());
-                                    } else {
-                                        recording.setStatus(RECORDING);
-                                    }
-                                }
+                                recording.setStatus(RECORDING);
                             }
                         }
                         recordings.add(recording);
@@ -480,6 +736,23 @@ public class LocalRecorder implements Recorder {
         return recordings;
     }
 
+    private void setPostProcessingStatus(Recording recording, File rec) {
+        PlaylistGenerator playlistGenerator = playlistGenerators.get(rec);
+        if(playlistGenerator != null) {
+            recording.setStatus(GENERATING_PLAYLIST);
+            recording.setProgress(playlistGenerator.getProgress());
+        } else {
+            SegmentMerger merger = segmentMergers.get(rec);
+            if(merger != null) {
+                recording.setStatus(STATUS.MERGING);
+                recording.setProgress(merger.getProgress());
+            } else {
+                // has just been finished
+                recording.setStatus(FINISHED);
+            }
+        }
+    }
+
     private long getSize(File rec) {
         long size = 0;
         File[] files = rec.listFiles();
@@ -503,6 +776,7 @@ public class LocalRecorder implements Recorder {
 
         try {
             deleteInProgress.add(directory);
+            postProcessingPending.remove(directory);
             File[] files = directory.listFiles();
             boolean deletedAllFiles = true;
             for (File file : files) {
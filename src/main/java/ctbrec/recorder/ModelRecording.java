@@ -0,0 +1,107 @@
+package ctbrec.recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ctbrec.Model;
+import ctbrec.recorder.download.Download;
+
+/**
+ * The lifecycle of a model in the {@link LocalRecorder}. The state is changed with compare-and-set, so that
+ * only one thread can do a transition, e.g. start a download, and threads, which work on different models,
+ * never block each other.
+ * <p>
+ * <code>IDLE -&gt; CHECKING -&gt; RECORDING -&gt; POST_PROCESSING -&gt; IDLE</code>. <code>CHECKING</code> goes back to
+ * <code>IDLE</code>, if the model is offline. A model, which is removed from the recorder, goes to
+ * <code>REMOVED</code> from any state and stays there.
+ * <p>
+ * A download, which terminates shortly after it has been started, has probably failed. The restart of
+ * such a download is delayed, the delay doubles with every failure in a row.
+ */
+class ModelRecording {
+
+    /** downloads, which terminate earlier, count as failed */
+    private static final long MIN_DOWNLOAD_TIME = TimeUnit.SECONDS.toMillis(30);
+    private static final long MIN_RESTART_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_RESTART_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    enum State {
+        /** the model is offline or its state is unknown */
+        IDLE,
+        /** the online state of the model is being checked */
+        CHECKING,
+        /** a download is running */
+        RECORDING,
+        /** the download has terminated and is handed over to the post-processing */
+        POST_PROCESSING,
+        /** the model has been removed from the recorder */
+        REMOVED
+    }
+
+    private final Model model;
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    private volatile Download download;
+    private volatile long downloadStarted = 0;
+    private volatile int failedDownloads = 0;
+    private volatile long restartAt = 0;
+
+    ModelRecording(Model model) {
+        this.model = model;
+    }
+
+    Model getModel() {
+        return model;
+    }
+
+    State getState() {
+        return state.get();
+    }
+
+    boolean transition(State from, State to) {
+        return state.compareAndSet(from, to);
+    }
+
+    /**
+     * @return the previous state
+     */
+    State remove() {
+        return state.getAndSet(State.REMOVED);
+    }
+
+    /**
+     * @return the running or terminated download or null, if the model hasn't been recorded yet
+     */
+    Download getDownload() {
+        return download;
+    }
+
+    void setDownload(Download download) {
+        this.download = download;
+        this.downloadStarted = System.currentTimeMillis();
+    }
+
+    /**
+     * Determines the delay of the restart, after the download has terminated
+     *
+     * @return the delay in ms or 0, if the download can be restarted immediately
+     */
+    long downloadTerminated() {
+        long now = System.currentTimeMillis();
+        if(now - downloadStarted >= MIN_DOWNLOAD_TIME) {
+            failedDownloads = 0;
+            restartAt = 0;
+            return 0;
+        }
+        failedDownloads++;
+        long delay = Math.min(MAX_RESTART_DELAY, MIN_RESTART_DELAY << Math.min(failedDownloads - 1, 16));
+        restartAt = now + delay;
+        return delay;
+    }
+
+    /**
+     * @return true, if the download has failed recently and must not be restarted yet
+     */
+    boolean isRestartDelayed() {
+        return System.currentTimeMillis() < restartAt;
+    }
+}
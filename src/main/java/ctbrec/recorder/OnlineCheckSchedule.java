@@ -0,0 +1,148 @@
+package ctbrec.recorder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import ctbrec.Model;
+
+/**
+ * Decides, when the online state of a model is checked next. The models are kept in a priority queue
+ * ordered by the time their next check is due. Models, which have been online recently, are checked with
+ * the minimum interval. For models, which have been offline for a longer time, the interval is doubled
+ * with every check up to the maximum interval.
+ * <p>
+ * The {@link OnlineHistory} is used to check the models with the minimum interval in the hours, in which
+ * they usually are online, and shortly before these hours begin.
+ */
+public class OnlineCheckSchedule {
+
+    /** time after a model has been online, in which it is checked with the minimum interval */
+    static final long ACTIVE_PERIOD = TimeUnit.MINUTES.toMillis(15);
+    /** time before an hour, in which a model is likely online, from which on it is checked with the minimum interval */
+    static final long PRE_WARM = TimeUnit.MINUTES.toMillis(5);
+
+    private long minInterval;
+    private long maxInterval;
+    private OnlineHistory history;
+    private PriorityQueue<Entry> queue = new PriorityQueue<>((a, b) -> Long.compare(a.due, b.due));
+    private Map<Model, Entry> entries = new HashMap<>();
+
+    /**
+     * @param minInterval interval in ms for models, which have been online recently
+     * @param maxInterval interval in ms, up to which the interval of offline models grows
+     */
+    public OnlineCheckSchedule(long minInterval, long maxInterval, OnlineHistory history) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+        this.history = history;
+    }
+
+    /**
+     * Adds the model, its check is due immediately
+     */
+    public synchronized void add(Model model) {
+        Entry entry = entries.get(model);
+        if(entry == null) {
+            entry = new Entry(model);
+            entries.put(model, entry);
+        } else {
+            queue.remove(entry);
+        }
+        entry.interval = minInterval;
+        entry.due = System.currentTimeMillis();
+        queue.add(entry);
+    }
+
+    public synchronized void remove(Model model) {
+        Entry entry = entries.remove(model);
+        if(entry != null) {
+            queue.remove(entry);
+        }
+    }
+
+    /**
+     * Removes the models, whose check is due, from the queue. The models have to be put back with
+     * {@link #checked(Model, boolean)}.
+     */
+    public synchronized List<Model> takeDue() {
+        long now = System.currentTimeMillis();
+        List<Model> due = new ArrayList<>();
+        while(!queue.isEmpty() && queue.peek().due <= now) {
+            due.add(queue.poll().model);
+        }
+        return due;
+    }
+
+    /**
+     * Schedules the next check of the model
+     *
+     * @param online the result of the check. If the check failed, the model is treated as offline.
+     */
+    public synchronized void checked(Model model, boolean online) {
+        Entry entry = entries.get(model);
+        if(entry == null) {
+            // the model has been removed in the meantime
+            return;
+        }
+        queue.remove(entry);
+        long now = System.currentTimeMillis();
+        if(online) {
+            entry.lastOnline = now;
+            history.online(model, now);
+        } else {
+            history.observed(model, now);
+        }
+        if(online || now - entry.lastOnline < ACTIVE_PERIOD || history.isLikelyOnline(model, now)) {
+            entry.interval = minInterval;
+            entry.due = now + entry.interval;
+        } else {
+            entry.interval = Math.min(entry.interval * 2, maxInterval);
+            entry.due = now + entry.interval;
+            long likelyOnline = history.getNextLikelyOnline(model, now, entry.interval + PRE_WARM);
+            if(likelyOnline > 0) {
+                entry.due = Math.min(entry.due, Math.max(now + minInterval, likelyOnline - PRE_WARM));
+            }
+        }
+        queue.add(entry);
+    }
+
+    /**
+     * Schedules the next check of a model, which hasn't been checked, because it is recorded or its restart
+     * is delayed. The check is repeated with the minimum interval and nothing is recorded in the history.
+     */
+    public synchronized void skipped(Model model) {
+        Entry entry = entries.get(model);
+        if(entry == null) {
+            return;
+        }
+        queue.remove(entry);
+        entry.interval = minInterval;
+        entry.due = System.currentTimeMillis() + entry.interval;
+        queue.add(entry);
+    }
+
+    /**
+     * @return the time in ms until the next check is due or the maximum interval, if there are no models
+     */
+    public synchronized long getTimeToNextCheck() {
+        if(queue.isEmpty()) {
+            return maxInterval;
+        }
+        return Math.max(0, queue.peek().due - System.currentTimeMillis());
+    }
+
+    private static class Entry {
+        private Model model;
+        private long due;
+        private long interval;
+        private long lastOnline = 0;
+
+        Entry(Model model) {
+            this.model = model;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ctbrec.recorder;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import ctbrec.Model;
+
+/**
+ * Learns, at which hours of the week the models are usually online. For every model a histogram of the
+ * 168 hours of the week is kept, which counts the weeks, in which the model has been seen online in that
+ * hour. The histograms are stored in <code>online_history.json</code> in the config directory.
+ */
+public class OnlineHistory {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(OnlineHistory.class);
+
+    static final String FILE = "online_history.json";
+    private static final int HOURS_PER_WEEK = 7 * 24;
+    private static final long WEEK = TimeUnit.DAYS.toMillis(7);
+    /** share of the observed weeks, in which a model has to be online in an hour, to be expected online */
+    private static final double LIKELY = 0.3;
+
+    private File file;
+    private Map<String, Histogram> histograms = new HashMap<>();
+    private boolean dirty = false;
+
+    public OnlineHistory(File file) {
+        this.file = file;
+    }
+
+    public static OnlineHistory load() {
+        OnlineHistory history = new OnlineHistory(new File(OS.getConfigDir(), FILE));
+        if(history.file.exists()) {
+            try {
+                String json = new String(Files.readAllBytes(history.file.toPath()), StandardCharsets.UTF_8);
+                Map<String, Histogram> histograms = adapter().fromJson(json);
+                if(histograms != null) {
+                    history.histograms = histograms;
+                }
+            } catch (Exception e) {
+                LOG.error("Couldn't load online history from {}", history.file, e);
+            }
+        }
+        return history;
+    }
+
+    private static JsonAdapter<Map<String, Histogram>> adapter() {
+        Type type = Types.newParameterizedType(Map.class, String.class, Histogram.class);
+        return new Moshi.Builder().build().adapter(type);
+    }
+
+    /**
+     * Saves the histograms, if they have changed since the last save
+     */
+    public void save() throws IOException {
+        String json;
+        synchronized (this) {
+            if(!dirty) {
+                return;
+            }
+            json = adapter().toJson(histograms);
+            dirty = false;
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8), CREATE, WRITE, TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Records, that the model has been seen online. Every hour is counted once.
+     */
+    public synchronized void online(Model model, long time) {
+        Histogram histogram = getHistogram(model, time);
+        long hour = TimeUnit.MILLISECONDS.toHours(time);
+        if(histogram.lastHour != hour) {
+            histogram.lastHour = hour;
+            histogram.hours[hourOfWeek(time)]++;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Records, that the model has been checked, even if it hasn't been online. This starts the observation
+     * period of new models.
+     */
+    public synchronized void observed(Model model, long time) {
+        getHistogram(model, time);
+    }
+
+    private Histogram getHistogram(Model model, long time) {
+        return histograms.computeIfAbsent(model.getName(), (name) -> {
+            dirty = true;
+            Histogram histogram = new Histogram();
+            histogram.since = time;
+            return histogram;
+        });
+    }
+
+    /**
+     * @return true, if the model has been online in the hour of the given time in enough of the observed weeks
+     */
+    public synchronized boolean isLikelyOnline(Model model, long time) {
+        Histogram histogram = histograms.get(model.getName());
+        if(histogram == null) {
+            return false;
+        }
+        double weeks = Math.max(1, (time - histogram.since) / (double) WEEK);
+        return histogram.hours[hourOfWeek(time)] / weeks >= LIKELY;
+    }
+
+    /**
+     * @return the start of the first hour after the given time and before <code>time + horizon</code>, in which the
+     *         model is likely online, or -1, if there is no such hour
+     */
+    public synchronized long getNextLikelyOnline(Model model, long time, long horizon) {
+        if(!histograms.containsKey(model.getName())) {
+            return -1;
+        }
+        ZonedDateTime hour = Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).truncatedTo(ChronoUnit.HOURS);
+        for (int i = 1; i <= HOURS_PER_WEEK; i++) {
+            long start = hour.plusHours(i).toInstant().toEpochMilli();
+            if(start >= time + horizon) {
+                break;
+            }
+            if(isLikelyOnline(model, start)) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    static int hourOfWeek(long time) {
+        ZonedDateTime t = Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault());
+        return (t.getDayOfWeek().getValue() - 1) * 24 + t.getHour();
+    }
+
+    public static class Histogram {
+        /** start of the observation */
+        public long since;
+        /** number of weeks, in which the model has been online, per hour of the week starting on monday 0:00 */
+        public int[] hours = new int[HOURS_PER_WEEK];
+        private transient long lastHour = -1;
+    }
+}
@@ -0,0 +1,88 @@
+package ctbrec.recorder;
+
+import static ctbrec.ui.Launcher.BASE_URI;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.HttpClient;
+import ctbrec.Model;
+import ctbrec.ModelParser;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Finds online models on the listing pages of the site. One page lists many rooms, so the online state of
+ * most models can be determined with a few requests instead of one request per model. If a user is
+ * configured, the followed cams are used, otherwise the featured cams.
+ */
+public class OnlineListing {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(OnlineListing.class);
+
+    private HttpClient client;
+    private int maxPages;
+
+    /**
+     * @param maxPages the maximum number of pages, which are loaded per pass
+     */
+    public OnlineListing(HttpClient client, int maxPages) {
+        this.client = client;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * Loads listing pages, until all given models have been found, a page doesn't contain new rooms
+     * or the page limit has been reached.
+     *
+     * @return the models, which are listed as online
+     */
+    public Set<Model> findOnline(Collection<Model> models, String username) throws IOException {
+        Set<String> wanted = new HashSet<>();
+        for (Model model : models) {
+            wanted.add(model.getName().toLowerCase());
+        }
+
+        boolean followed = username != null && !username.isEmpty();
+        String url = BASE_URI + (followed ? "/followed-cams/" : "/");
+        Set<String> listed = new HashSet<>();
+        for (int page = 1; page <= maxPages && !listed.containsAll(wanted); page++) {
+            List<Model> rooms = loadPage(url + "?page=" + page + "&keywords=&_=" + System.currentTimeMillis(), followed);
+            boolean newRooms = false;
+            for (Model room : rooms) {
+                newRooms |= listed.add(room.getName().toLowerCase());
+            }
+            // pages beyond the last one repeat the last page
+            if(!newRooms) {
+                break;
+            }
+        }
+        LOG.trace("Found {} rooms on listing {}", listed.size(), url);
+
+        Set<Model> online = new HashSet<>();
+        for (Model model : models) {
+            if(listed.contains(model.getName().toLowerCase())) {
+                online.add(model);
+            }
+        }
+        return online;
+    }
+
+    private List<Model> loadPage(String url, boolean loginRequired) throws IOException {
+        LOG.trace("Fetching page {}", url);
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = client.execute(request, loginRequired)) {
+            if(response.isSuccessful()) {
+                return ModelParser.parseModels(response.body().string());
+            } else {
+                throw new IOException("HTTP status " + response.code() + " - " + response.message());
+            }
+        }
+    }
+}
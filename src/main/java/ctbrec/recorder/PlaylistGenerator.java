@@ -4,9 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -37,6 +38,14 @@ import com.iheartradio.m3u8.data.PlaylistType;
 import com.iheartradio.m3u8.data.TrackData;
 import com.iheartradio.m3u8.data.TrackInfo;
 
+import ctbrec.Recording;
+import ctbrec.recorder.download.RollingPlaylist;
+import ctbrec.recorder.download.SingleFileSegmentWriter;
+import ctbrec.recorder.download.TsValidator;
+import ctbrec.recorder.download.TsValidator.InvalidSegmentException;
+import okio.BufferedSource;
+import okio.Okio;
+
 
 public class PlaylistGenerator {
     private static final transient Logger LOG = LoggerFactory.getLogger(PlaylistGenerator.class);
@@ -44,23 +53,28 @@ public class PlaylistGenerator {
     private int lastPercentage;
     private List<ProgressListener> listeners = new ArrayList<>();
 
+    /**
+     * Finishes the playlist, which has been built while downloading. Recordings without such a playlist
+     * get a playlist generated from the segment index or from the durations of the segment files.
+     */
     public void generate(File directory) throws IOException, ParseException, PlaylistException {
+        File index = new File(directory, SingleFileSegmentWriter.INDEX_FILE);
+        if(!index.exists()) {
+            addMissingSegments(directory);
+        }
+        if(RollingPlaylist.finish(directory)) {
+            updateProgressListeners(1);
+            LOG.debug("Finished playlist of {}", directory);
+            return;
+        }
+
         LOG.debug("Starting playlist generation for {}", directory);
-        // get a list of all ts files and sort them by sequence
-        File[] files = directory.listFiles((f) -> f.getName().endsWith(".ts"));
-        Arrays.sort(files, (f1, f2) -> {
-            String n1 = f1.getName();
-            n1 = n1.substring(0, n1.length()-3);
-            int seq1 = Integer.parseInt(n1.substring(n1.lastIndexOf('_')+1));
-
-            String n2 = f2.getName();
-            n2 = n2.substring(0, n2.length()-3);
-            int seq2 = Integer.parseInt(n2.substring(n2.lastIndexOf('_')+1));
-
-            if(seq1 < seq2) return -1;
-            if(seq1 > seq2) return 1;
-            return 0;
-        });
+        if(index.exists()) {
+            generateFromIndex(directory, index);
+            return;
+        }
+
+        File[] files = getSegmentFiles(directory);
 
         // create a track containing all files
         List<TrackData> track = new ArrayList<>();
@@ -109,6 +123,91 @@ public class PlaylistGenerator {
         }
     }
 
+    /**
+     * The playlist, which is built while downloading, is rewritten only every few seconds. If the recorder
+     * has been terminated, the segments written after the last rewrite are missing in the playlist. They are
+     * added at the end of the playlist with the durations determined from the segment files.
+     */
+    private void addMissingSegments(File directory) throws IOException {
+        if(!new File(directory, RollingPlaylist.FILE).exists() || RollingPlaylist.isFinished(directory)) {
+            return;
+        }
+        RollingPlaylist playlist = new RollingPlaylist(directory);
+        playlist.recover();
+        int added = 0;
+        for (File file : getSegmentFiles(directory)) {
+            if(playlist.isRecovered(file.getName())) {
+                continue;
+            }
+            try {
+                playlist.add(getSequence(file), file.getName(), (float) getFileDuration(file));
+                added++;
+            } catch(Exception e) {
+                LOG.warn("Couldn't determine duration for {}. Skipping this file.", file.getName());
+                file.renameTo(new File(directory, file.getName()+".corrupt"));
+            }
+        }
+        playlist.flush();
+        if(added > 0) {
+            LOG.info("Added {} segments, which were missing in the playlist of {}", added, directory);
+        }
+    }
+
+    /**
+     * @return the segment files of a recording, which has been downloaded to a file per segment, sorted by sequence
+     */
+    private static File[] getSegmentFiles(File directory) {
+        File[] files = directory.listFiles((f) -> f.getName().startsWith("media_") && f.getName().endsWith(".ts"));
+        Arrays.sort(files, (f1, f2) -> Integer.compare(getSequence(f1), getSequence(f2)));
+        return files;
+    }
+
+    private static int getSequence(File segment) {
+        String name = segment.getName();
+        name = name.substring(0, name.length()-3);
+        return Integer.parseInt(name.substring(name.lastIndexOf('_')+1));
+    }
+
+    /**
+     * Generates a playlist for a single file recording. The segments are addressed by byte ranges
+     * in the recording file, which are read from the index written by {@link SingleFileSegmentWriter}.
+     */
+    private void generateFromIndex(File directory, File index) throws IOException {
+        List<String> entries = Files.readAllLines(index.toPath(), StandardCharsets.UTF_8);
+        String filename = Recording.mergedFileFromDirectory(directory).getName();
+        StringBuilder tracks = new StringBuilder();
+        float maxDuration = 0;
+        int total = entries.size();
+        int done = 0;
+        for (String entry : entries) {
+            String[] fields = entry.trim().split(" ");
+            if(fields.length == 4) {
+                long offset = Long.parseLong(fields[1]);
+                long length = Long.parseLong(fields[2]);
+                float duration = Float.parseFloat(fields[3]);
+                maxDuration = Math.max(maxDuration, duration);
+                tracks.append("#EXTINF:").append(fields[3]).append(",\n");
+                tracks.append("#EXT-X-BYTERANGE:").append(length).append('@').append(offset).append('\n');
+                tracks.append(filename).append('\n');
+            }
+            done++;
+            updateProgressListeners((double) done / (double) total);
+        }
+
+        StringBuilder playlist = new StringBuilder();
+        playlist.append("#EXTM3U\n");
+        playlist.append("#EXT-X-VERSION:4\n");
+        playlist.append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+        playlist.append("#EXT-X-TARGETDURATION:").append((int) Math.ceil(maxDuration)).append('\n');
+        playlist.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        playlist.append(tracks);
+        playlist.append("#EXT-X-ENDLIST\n");
+
+        File output = new File(directory, "playlist.m3u8");
+        Files.write(output.toPath(), playlist.toString().getBytes(StandardCharsets.UTF_8));
+        LOG.debug("Finished playlist generation for {}", directory);
+    }
+
     private void updateProgressListeners(double percentage) {
         int p = (int) (percentage*100);
         if(p > lastPercentage) {
@@ -128,7 +227,33 @@ public class PlaylistGenerator {
         return targetDuration;
     }
 
+    /**
+     * Determines the duration of a segment from its time stamps. The time stamps are only read at the beginning
+     * and the end of the segment, so the segment is checked with the {@link TsValidator} for corruption in between.
+     * If the time stamps can't be used or the segment is corrupt, all frames of the segment are demuxed.
+     */
     private double getFileDuration(File file) throws IOException {
+        double duration = TsDurationProbe.probe(file);
+        if(duration > 0) {
+            try {
+                validateSegment(file);
+                return duration;
+            } catch(InvalidSegmentException e) {
+                LOG.debug("Segment {} is corrupt, demuxing all frames: {}", file.getName(), e.getMessage());
+            }
+        } else {
+            LOG.debug("Couldn't determine the duration of {} from the time stamps, demuxing all frames", file.getName());
+        }
+        return demuxFileDuration(file);
+    }
+
+    private void validateSegment(File file) throws IOException {
+        try(BufferedSource source = Okio.buffer(new TsValidator(Okio.source(file)))) {
+            source.readAll(Okio.blackhole());
+        }
+    }
+
+    private double demuxFileDuration(File file) throws IOException {
         try(FileChannelWrapper ch = NIOUtils.readableChannel(file)) {
             _2<Integer,Demuxer> m2tsDemuxer = createM2TSDemuxer(ch, TrackType.VIDEO);
             Demuxer demuxer = m2tsDemuxer.v1;
@@ -177,22 +302,24 @@ public class PlaylistGenerator {
 
     public void validate(File recDir) throws IOException, ParseException, PlaylistException {
         File playlist = new File(recDir, "playlist.m3u8");
+        if(new File(recDir, SingleFileSegmentWriter.INDEX_FILE).exists()) {
+            LOG.debug("Playlist of single file recording has been built from the index");
+            return;
+        }
         if(playlist.exists()) {
             PlaylistParser playlistParser = new PlaylistParser(new FileInputStream(playlist), Format.EXT_M3U, Encoding.UTF_8);
             Playlist m3u = playlistParser.parse();
             MediaPlaylist mediaPlaylist = m3u.getMediaPlaylist();
-            int playlistSize = mediaPlaylist.getTracks().size();
-            File[] segments = recDir.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return name.startsWith("media_") && name.endsWith(".ts");
+            // the playlist doesn't contain segments, which have been downloaded incompletely
+            for (TrackData track : mediaPlaylist.getTracks()) {
+                if(!new File(recDir, track.getUri()).exists()) {
+                    throw new InvalidPlaylistException("Segment " + track.getUri() + " of the playlist does not exist");
                 }
-            });
-            if(segments.length != playlistSize) {
+            }
+            if(getSegmentFiles(recDir).length != mediaPlaylist.getTracks().size()) {
                 throw new InvalidPlaylistException("Playlist size and amount of segments differ");
-            } else {
-                LOG.debug("Generated playlist looks good");
             }
+            LOG.debug("Playlist looks good");
         } else {
             throw new FileNotFoundException(playlist.getAbsolutePath() + " does not exist");
         }
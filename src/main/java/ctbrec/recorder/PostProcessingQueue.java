@@ -0,0 +1,236 @@
+package ctbrec.recorder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.Settings.POST_PROCESSING_ORDER;
+
+/**
+ * Runs the post-processing of finished recordings with a limited concurrency. The post-processing has two
+ * stages: the playlist generation, which mostly needs CPU, and the merge, which mostly needs I/O. Each stage
+ * has its own threads and a priority queue, which is ordered by the size of the recordings or by their start time.
+ * <p>
+ * The number of waiting recordings is limited. If the limit is reached, a recording is not accepted and
+ * has to be submitted again later.
+ */
+public class PostProcessingQueue {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(PostProcessingQueue.class);
+
+    private Stage playlistStage;
+    private Stage mergeStage;
+    private Map<File, Job> jobs = new ConcurrentHashMap<>();
+    private int maxQueued;
+    private Comparator<Job> order;
+
+    /**
+     * @param cpuThreads number of recordings, for which the playlist is generated at the same time
+     * @param ioThreads number of recordings, which are merged at the same time
+     * @param maxQueued number of recordings, which may wait for the post-processing
+     */
+    public PostProcessingQueue(int cpuThreads, int ioThreads, int maxQueued, POST_PROCESSING_ORDER order) {
+        this.maxQueued = maxQueued;
+        Comparator<Job> byAge = Comparator.comparingLong(j -> j.started);
+        Comparator<Job> bySize = Comparator.comparingLong(j -> j.size);
+        this.order = order == POST_PROCESSING_ORDER.OLDEST_FIRST ? byAge.thenComparing(bySize) : bySize.thenComparing(byAge);
+        playlistStage = new Stage("Playlist", cpuThreads);
+        mergeStage = new Stage("Merge", ioThreads);
+    }
+
+    /**
+     * Queues the post-processing of a recording
+     *
+     * @param started the start time of the recording in ms since the epoch
+     * @param size the size of the recording in bytes
+     * @param generatePlaylist the playlist generation, which runs on the CPU stage
+     * @param merge the merge, which runs on the I/O stage, or null, if the recording is not merged
+     * @return false, if the queue is full and the recording has not been accepted
+     */
+    public synchronized boolean submit(File directory, long started, long size, Runnable generatePlaylist, Runnable merge) {
+        if(jobs.containsKey(directory)) {
+            return true;
+        }
+        if(getQueued() >= maxQueued) {
+            return false;
+        }
+        Job job = new Job(directory, started, size, generatePlaylist, merge);
+        jobs.put(directory, job);
+        playlistStage.execute(job);
+        return true;
+    }
+
+    /**
+     * @return the number of recordings, which are waiting in one of the stages
+     */
+    public int getQueued() {
+        return playlistStage.queue.size() + mergeStage.queue.size();
+    }
+
+    /**
+     * @return the position and the estimated time to completion of a recording, which is waiting for the
+     *         post-processing, or null, if the recording is not waiting
+     */
+    public QueueStatus getStatus(File directory) {
+        Job job = jobs.get(directory);
+        if(job == null || job.running) {
+            return null;
+        }
+        Stage stage = job.stage;
+        List<Job> waiting = new ArrayList<>();
+        for (Runnable r : stage.queue) {
+            waiting.add((Job) r);
+        }
+        waiting.sort(order);
+        int position = waiting.indexOf(job);
+        if(position < 0) {
+            // has just been started
+            return null;
+        }
+        long ahead = 0;
+        for (int i = 0; i < position; i++) {
+            ahead += waiting.get(i).size;
+        }
+        QueueStatus status = new QueueStatus();
+        status.position = position + 1;
+        long eta = stage.estimate(ahead + job.size);
+        if(eta >= 0 && stage == playlistStage && job.merge != null) {
+            long merge = mergeStage.estimate(job.size);
+            eta = merge >= 0 ? eta + merge : -1;
+        }
+        status.estimatedCompletion = eta >= 0 ? System.currentTimeMillis() + eta : -1;
+        return status;
+    }
+
+    /**
+     * Stops accepting recordings. Running post-processings are not interrupted, waiting ones are discarded
+     * and will be submitted by the playlist generator trigger after a restart.
+     */
+    public void shutdown() {
+        playlistStage.executor.shutdown();
+        mergeStage.executor.shutdown();
+        playlistStage.queue.clear();
+        mergeStage.queue.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("playlist: %d waiting, %d running; merge: %d waiting, %d running",
+                playlistStage.queue.size(), playlistStage.executor.getActiveCount(),
+                mergeStage.queue.size(), mergeStage.executor.getActiveCount());
+    }
+
+    private void done(Job job) {
+        jobs.remove(job.directory);
+    }
+
+    public static class QueueStatus {
+        /** position in the queue, starting with 1 */
+        public int position;
+        /** estimated time of the completion in ms since the epoch or -1, if there is no estimate yet */
+        public long estimatedCompletion;
+    }
+
+    private class Job implements Runnable, Comparable<Job> {
+        private File directory;
+        private long started;
+        private long size;
+        private Runnable generatePlaylist;
+        private Runnable merge;
+        private volatile Stage stage;
+        private volatile boolean running = false;
+
+        Job(File directory, long started, long size, Runnable generatePlaylist, Runnable merge) {
+            this.directory = directory;
+            this.started = started;
+            this.size = size;
+            this.generatePlaylist = generatePlaylist;
+            this.merge = merge;
+        }
+
+        @Override
+        public void run() {
+            Stage current = stage;
+            running = true;
+            long start = System.currentTimeMillis();
+            try {
+                if(current == playlistStage) {
+                    generatePlaylist.run();
+                } else {
+                    merge.run();
+                }
+            } catch (Exception e) {
+                LOG.error("Post-processing of {} failed", directory, e);
+            } finally {
+                current.measured(size, System.currentTimeMillis() - start);
+                running = false;
+            }
+            if(current == playlistStage && merge != null) {
+                try {
+                    mergeStage.execute(this);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // shut down
+                }
+            }
+            done(this);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return order.compare(this, other);
+        }
+    }
+
+    private class Stage {
+        private static final double SMOOTHING = 0.3;
+        private PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+        private ThreadPoolExecutor executor;
+        private int threads;
+        /** smoothed processing rate of one thread in bytes per ms */
+        private volatile double rate = -1;
+
+        Stage(String name, int threads) {
+            this.threads = Math.max(1, threads);
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS, queue,
+                    (r) -> Threads.newThread("Postprocessing-" + name + "-" + threadNumber.getAndIncrement(), r));
+        }
+
+        void execute(Job job) {
+            job.stage = this;
+            executor.execute(job);
+        }
+
+        synchronized void measured(long size, long duration) {
+            if(size <= 0 || duration <= 0) {
+                return;
+            }
+            double current = size / (double) duration;
+            rate = rate < 0 ? current : SMOOTHING * current + (1 - SMOOTHING) * rate;
+        }
+
+        /**
+         * @return the estimated time in ms to process the given amount of bytes or -1, if nothing has been measured yet
+         */
+        long estimate(long bytes) {
+            double r = rate;
+            if(r <= 0) {
+                return -1;
+            }
+            // the recordings ahead are processed in parallel
+            return (long) (bytes / (r * threads));
+        }
+    }
+}
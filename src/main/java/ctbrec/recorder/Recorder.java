@@ -7,6 +7,7 @@ import java.util.List;
 
 import ctbrec.Model;
 import ctbrec.Recording;
+import ctbrec.recorder.download.DownloadStats;
 
 public interface Recorder {
     public void startRecording(Model model) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
@@ -19,8 +20,18 @@ public interface Recorder {
      */
     public boolean isRecording(Model model);
 
+    /**
+     * Changes the priority of a model in the list of models to record, see {@link Model#getPriority()}
+     */
+    public void setPriority(Model model, int priority) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
+
     public List<Model> getModelsRecording();
 
+    /**
+     * Returns the metrics of all running downloads
+     */
+    public List<DownloadStats> getDownloadStats() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
+
     public List<Recording> getRecordings() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
 
     public void merge(Recording recording, boolean keepSegments) throws IOException;
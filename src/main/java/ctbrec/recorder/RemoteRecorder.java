@@ -20,6 +20,7 @@ import ctbrec.HttpClient;
 import ctbrec.InstantJsonAdapter;
 import ctbrec.Model;
 import ctbrec.Recording;
+import ctbrec.recorder.download.DownloadStats;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.Request.Builder;
@@ -36,6 +37,7 @@ public class RemoteRecorder implements Recorder {
             .build();
     private JsonAdapter<ModelListResponse> modelListResponseAdapter = moshi.adapter(ModelListResponse.class);
     private JsonAdapter<RecordingListResponse> recordingListResponseAdapter = moshi.adapter(RecordingListResponse.class);
+    private JsonAdapter<StatsResponse> statsResponseAdapter = moshi.adapter(StatsResponse.class);
     private JsonAdapter<Model> modelAdapter = moshi.adapter(Model.class);
 
     private List<Model> models = Collections.emptyList();
@@ -63,6 +65,12 @@ public class RemoteRecorder implements Recorder {
         sendRequest("stop", model);
     }
 
+    @Override
+    public void setPriority(Model model, int priority) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
+        model.setPriority(priority);
+        sendRequest("priority", model);
+    }
+
     private void sendRequest(String action, Model model) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
         String requestTemplate = "{\"action\": \"<<action>>\", \"model\": <<model>>}";
         requestTemplate = requestTemplate.replaceAll("<<action>>", action);
@@ -84,7 +92,7 @@ public class RemoteRecorder implements Recorder {
 
             if("start".equals(action)) {
                 models.add(model);
-            } else {
+            } else if("stop".equals(action)) {
                 models.remove(model);
             }
         } else {
@@ -185,6 +193,37 @@ public class RemoteRecorder implements Recorder {
         public List<Recording> recordings;
     }
 
+    private static class StatsResponse {
+        public String status;
+        public String msg;
+        public List<DownloadStats> stats;
+    }
+
+    @Override
+    public List<DownloadStats> getDownloadStats() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
+        String msg = "{\"action\": \"stats\"}";
+        RequestBody body = RequestBody.create(JSON, msg);
+        Request.Builder builder = new Request.Builder()
+                .url("http://" + config.getSettings().httpServer + ":" + config.getSettings().httpPort + "/rec")
+                .post(body);
+        addHmacIfNeeded(msg, builder);
+        Request request = builder.build();
+        Response response = client.execute(request);
+        String json = response.body().string();
+        if(response.isSuccessful()) {
+            StatsResponse resp = statsResponseAdapter.fromJson(json);
+            if(resp.status.equals("success")) {
+                return resp.stats;
+            } else {
+                LOG.error("Server returned error: {} - {}", resp.status, resp.msg);
+            }
+        } else {
+            LOG.error("Couldn't get download statistics from server. HTTP status: {} - {}", response.code(), json);
+        }
+
+        return Collections.emptyList();
+    }
+
     @Override
     public List<Recording> getRecordings() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
         String msg = "{\"action\": \"recordings\"}";
@@ -0,0 +1,41 @@
+package ctbrec.recorder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads for the blocking tasks of the recorder (monitors, downloads and
+ * post-processing).
+ * <p>
+ * This is the Java 8 implementation, which always uses platform threads. On Java 21 and newer the
+ * implementation in <code>META-INF/versions/21</code> of the multi-release jar is used instead,
+ * which runs the tasks on virtual threads, if <code>virtualThreads</code> is enabled in the
+ * settings.
+ */
+public class Threads {
+
+    private Threads() {}
+
+    public static boolean isVirtualThreadsEnabled() {
+        return false;
+    }
+
+    /**
+     * Creates a new daemon thread, which is not started yet
+     */
+    public static Thread newThread(String name, Runnable task) {
+        Thread t = new Thread(task);
+        t.setName(name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Creates an executor, which runs every task in its own thread
+     */
+    public static ExecutorService newTaskExecutor(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool((r) -> newThread(namePrefix + "-" + threadNumber.getAndIncrement(), r));
+    }
+}
@@ -0,0 +1,178 @@
+package ctbrec.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines the duration of an MPEG transport stream segment from the presentation time stamps (PTS) of its
+ * video stream. Only the PES headers at the beginning and at the end of the file are read: the duration is the
+ * difference between the lowest PTS at the beginning and the highest PTS at the end plus the duration of one
+ * frame. This is much faster than demuxing all frames of the segment.
+ */
+public class TsDurationProbe {
+
+    private static final int PACKET_SIZE = 188;
+    private static final int SYNC_BYTE = 0x47;
+    /** size of the parts at the beginning and at the end of the file, which are searched for time stamps */
+    private static final int WINDOW = 64 * 1024;
+    private static final int MAX_WINDOW = 1024 * 1024;
+    /** number of frames, which have to be found at the beginning and at the end, to cover the reordering of B-frames */
+    private static final int MIN_FRAMES = 8;
+    private static final double PTS_CLOCK = 90000;
+    /** longer durations are considered to be caused by corrupt time stamps */
+    private static final double MAX_DURATION = TimeUnit.MINUTES.toSeconds(10);
+
+    private TsDurationProbe() {
+    }
+
+    /**
+     * @return the duration in seconds or -1, if it can't be determined from the time stamps, because the
+     *         time stamps wrap around or are missing or the segment is corrupt
+     */
+    public static double probe(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            List<Pts> head = null;
+            for (int window = WINDOW; head == null || head.size() < MIN_FRAMES; window *= 2) {
+                head = readPts(raf, 0, (int) Math.min(window, length), -1);
+                if(head == null || window >= MAX_WINDOW || window >= length) {
+                    break;
+                }
+            }
+            if(head == null || head.isEmpty()) {
+                return -1;
+            }
+            int pid = head.get(0).pid;
+            long first = Long.MAX_VALUE;
+            long headEnd = 0;
+            for (Pts pts : head) {
+                first = Math.min(first, pts.value);
+                headEnd = Math.max(headEnd, pts.value);
+            }
+
+            List<Pts> tail = null;
+            for (int window = WINDOW; tail == null || tail.size() < MIN_FRAMES; window *= 2) {
+                int size = (int) Math.min(window, length);
+                tail = readPts(raf, length - size, size, pid);
+                if(tail == null || window >= MAX_WINDOW || window >= length) {
+                    break;
+                }
+            }
+            if(tail == null || tail.isEmpty()) {
+                return -1;
+            }
+            List<Long> values = new ArrayList<>(tail.size());
+            for (Pts pts : tail) {
+                values.add(pts.value);
+            }
+            // the frames are not in presentation order, if the stream contains B-frames
+            Collections.sort(values);
+            long last = values.get(values.size() - 1);
+            long frameDuration = 0;
+            for (int i = 1; i < values.size(); i++) {
+                long diff = values.get(i) - values.get(i - 1);
+                if(diff > 0 && (frameDuration == 0 || diff < frameDuration)) {
+                    frameDuration = diff;
+                }
+            }
+
+            long maxSpan = (long) (MAX_DURATION * PTS_CLOCK);
+            if(last < first || headEnd - first > maxSpan || last - values.get(0) > maxSpan) {
+                // the 33 bit time stamps have wrapped around or are corrupt
+                return -1;
+            }
+            double duration = (last - first + frameDuration) / PTS_CLOCK;
+            return duration > 0 && duration <= MAX_DURATION ? duration : -1;
+        }
+    }
+
+    /**
+     * Reads the time stamps of the video PES headers in a part of the file
+     *
+     * @param pid the PID of the video stream or -1 to use the PID of the first video PES header
+     * @return the time stamps or null, if the data is corrupt
+     */
+    private static List<Pts> readPts(RandomAccessFile raf, long offset, int length, int pid) throws IOException {
+        byte[] data = new byte[length];
+        raf.seek(offset);
+        raf.readFully(data);
+        int start = findSync(data);
+        if(start < 0) {
+            return null;
+        }
+        List<Pts> result = new ArrayList<>();
+        for (int p = start; p + PACKET_SIZE <= length; p += PACKET_SIZE) {
+            if((data[p] & 0xFF) != SYNC_BYTE || (data[p + 1] & 0x80) != 0) {
+                // lost sync or transport error
+                return null;
+            }
+            boolean payloadUnitStart = (data[p + 1] & 0x40) != 0;
+            int packetPid = ((data[p + 1] & 0x1F) << 8) | (data[p + 2] & 0xFF);
+            int adaptationFieldControl = (data[p + 3] >> 4) & 0x03;
+            if(!payloadUnitStart || (adaptationFieldControl & 0x01) == 0 || (pid >= 0 && packetPid != pid)) {
+                continue;
+            }
+            int payload = p + 4;
+            if((adaptationFieldControl & 0x02) != 0) {
+                payload += 1 + (data[p + 4] & 0xFF);
+            }
+            // start code, stream id, length, flags, header length and PTS
+            if(payload + 14 > p + PACKET_SIZE
+                    || data[payload] != 0 || data[payload + 1] != 0 || data[payload + 2] != 1
+                    || (data[payload + 3] & 0xF0) != 0xE0
+                    || (data[payload + 7] & 0x80) == 0) {
+                continue;
+            }
+            long pts = parsePts(data, payload + 9);
+            if(pts < 0) {
+                return null;
+            }
+            if(pid < 0) {
+                pid = packetPid;
+            }
+            result.add(new Pts(packetPid, pts));
+        }
+        return result;
+    }
+
+    /**
+     * @return the offset of the first packet, which is followed by another packet, or -1
+     */
+    private static int findSync(byte[] data) {
+        for (int i = 0; i < PACKET_SIZE && i < data.length; i++) {
+            if((data[i] & 0xFF) == SYNC_BYTE && (i + PACKET_SIZE >= data.length || (data[i + PACKET_SIZE] & 0xFF) == SYNC_BYTE)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the 33 bit time stamp or -1, if the marker bits are not set
+     */
+    private static long parsePts(byte[] data, int i) {
+        if((data[i] & 0x01) == 0 || (data[i + 2] & 0x01) == 0 || (data[i + 4] & 0x01) == 0) {
+            return -1;
+        }
+        return ((long) (data[i] & 0x0E) << 29)
+                | ((data[i + 1] & 0xFF) << 22)
+                | ((data[i + 2] & 0xFE) << 14)
+                | ((data[i + 3] & 0xFF) << 7)
+                | ((data[i + 4] & 0xFE) >> 1);
+    }
+
+    private static class Pts {
+        private int pid;
+        private long value;
+
+        Pts(int pid, long value) {
+            this.pid = pid;
+            this.value = value;
+        }
+    }
+}
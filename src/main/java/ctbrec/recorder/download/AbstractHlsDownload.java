@@ -0,0 +1,647 @@
+package ctbrec.recorder.download;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.iheartradio.m3u8.ParseException;
+import com.iheartradio.m3u8.PlaylistException;
+import com.iheartradio.m3u8.data.MasterPlaylist;
+import com.iheartradio.m3u8.data.PlaylistData;
+
+import ctbrec.Config;
+import ctbrec.HttpClient;
+import ctbrec.Model;
+import ctbrec.recorder.Chaturbate;
+import ctbrec.Recording;
+import ctbrec.recorder.download.BandwidthGovernor.ThrottledSource;
+import ctbrec.recorder.download.TsValidator.InvalidSegmentException;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Functionality shared by the HLS download engines: directory layout, playlist parsing and
+ * segment bookkeeping. The subclasses decide, how the playlist is polled and how the segments
+ * are fetched.
+ */
+public abstract class AbstractHlsDownload implements Download {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(AbstractHlsDownload.class);
+    private static final long STEP_DOWN_COOLDOWN = TimeUnit.SECONDS.toMillis(30);
+    private static final long STEP_UP_COOLDOWN = TimeUnit.MINUTES.toMillis(2);
+
+    protected HttpClient client;
+    protected Model model;
+    protected volatile boolean running = false;
+    protected volatile boolean alive = true;
+    /** completes, when the download has terminated and all queued segments have been written or have failed */
+    protected CompletableFuture<Void> termination = new CompletableFuture<>();
+    /** set, when the download doesn't queue segments anymore */
+    private volatile boolean finishing = false;
+    protected Path downloadDir;
+    protected SingleFileSegmentWriter segmentWriter;
+    protected DownloadJournal journal;
+    /** playlist of the recording, which is built while the segments are downloaded */
+    protected RollingPlaylist playlist;
+    /** segments, which have been queued, but have not been downloaded yet */
+    private ConcurrentSkipListSet<Integer> pendingSegments = new ConcurrentSkipListSet<>();
+    private String edgeUrl = "-";
+    protected PlaylistPollScheduler pollScheduler = new PlaylistPollScheduler();
+    protected DownloadMetrics metrics = new DownloadMetrics();
+    protected BandwidthGovernor governor;
+    protected HedgedRequests hedgedRequests;
+    /** response times of the segment requests */
+    protected LatencyTracker segmentLatency = new LatencyTracker(50);
+    /** renditions of the stream ordered like in the master playlist */
+    protected List<StreamSource> streamSources = new ArrayList<>();
+    protected int streamSourceIndex = -1;
+    /** the rendition selected for the model, the adaptive stream selection doesn't go above it */
+    private int selectedStreamSourceIndex = -1;
+    private volatile int requestedStreamSource = -1;
+    private volatile long lastStreamSourceSwitch = 0;
+    private boolean adaptive = Config.getInstance().getSettings().adaptiveStreamSource;
+    private AdaptiveStreamSelection adaptiveSelection = new AdaptiveStreamSelection();
+    private MediaPlaylistParser playlistParser;
+
+    public AbstractHlsDownload(HttpClient client, BandwidthGovernor governor, HedgedRequests hedgedRequests) {
+        this.client = client;
+        this.governor = governor;
+        this.hedgedRequests = hedgedRequests;
+    }
+
+    protected void createDownloadDir(Model model, Config config) throws IOException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm");
+        String startTime = sdf.format(new Date());
+        Path modelDir = FileSystems.getDefault().getPath(config.getSettings().recordingsDir, model.getName());
+        downloadDir = FileSystems.getDefault().getPath(modelDir.toString(), startTime);
+        if (!Files.exists(downloadDir, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(downloadDir);
+        }
+        openOutput(config);
+    }
+
+    private void openOutput(Config config) throws IOException {
+        File dir = downloadDir.toFile();
+        playlist = new RollingPlaylist(dir);
+        if(config.getSettings().singleFileRecording) {
+            // the writer adds the segments of the index to the playlist
+            long maxBuffered = Math.max(1, config.getSettings().singleFileReorderBufferSize) * 1024L;
+            segmentWriter = new SingleFileSegmentWriter(Recording.mergedFileFromDirectory(dir), new File(dir, SingleFileSegmentWriter.INDEX_FILE), playlist, maxBuffered);
+        } else {
+            playlist.recover();
+        }
+        journal = new DownloadJournal(dir);
+    }
+
+    /**
+     * Continues the last recording of the model, if its download has been interrupted by a restart of the recorder
+     * and the next segment is still in the playlist. Otherwise a new download directory is created.
+     *
+     * @param playlistUrl URL of the media playlist, which is going to be recorded
+     * @return the sequence number of the next segment to download or 0, if a new recording has been started
+     */
+    protected int createOrResumeDownloadDir(Model model, Config config, String playlistUrl) throws IOException {
+        File recording = findResumableRecording(model, config);
+        if(recording != null) {
+            DownloadJournal.Entry last = DownloadJournal.readLast(recording);
+            LiveStreamingPlaylist lsp = parseSegments(playlistUrl, Integer.MAX_VALUE);
+            if(last != null && lsp.seq <= last.nextSegment && last.nextSegment <= lsp.getNextSequence()) {
+                downloadDir = recording.toPath();
+                openOutput(config);
+                int nextSegment = last.nextSegment;
+                if(segmentWriter != null) {
+                    // the segment might have been written after the last journal entry
+                    nextSegment = Math.max(nextSegment, segmentWriter.getLastSequence() + 1);
+                }
+                if(last.streamSource >= 0 && last.streamSource < streamSources.size()) {
+                    requestedStreamSource = last.streamSource;
+                }
+                LOG.info("Resuming recording of {} in {} at segment {}", model, downloadDir, nextSegment);
+                return nextSegment;
+            } else {
+                LOG.info("Can't resume recording of {} in {}, the stream has moved on", model, recording);
+            }
+        }
+        createDownloadDir(model, config);
+        return 0;
+    }
+
+    private File findResumableRecording(Model model, Config config) {
+        File modelDir = new File(config.getSettings().recordingsDir, model.getName());
+        File[] recordings = modelDir.listFiles((f) -> f.isDirectory() && new File(f, DownloadJournal.FILE).exists());
+        if(recordings == null || recordings.length == 0) {
+            return null;
+        }
+        Arrays.sort(recordings, (r1, r2) -> r2.getName().compareTo(r1.getName()));
+        File latest = recordings[0];
+        boolean singleFile = new File(latest, SingleFileSegmentWriter.INDEX_FILE).exists();
+        if(DownloadJournal.isResumable(latest)
+                && !RollingPlaylist.isFinished(latest)
+                && singleFile == config.getSettings().singleFileRecording) {
+            return latest;
+        }
+        return null;
+    }
+
+    /**
+     * Records the progress of the download in the journal. Has to be called after the segments of
+     * a playlist have been queued.
+     */
+    protected void updateJournal(LiveStreamingPlaylist lsp, String playlistUrl) {
+        if(journal == null) {
+            return;
+        }
+        if(!lsp.segments.isEmpty()) {
+            edgeUrl = lsp.segments.get(lsp.segments.size() - 1);
+        }
+        int nextSegment = lsp.getNextSequence();
+        if(!pendingSegments.isEmpty()) {
+            nextSegment = Math.min(nextSegment, pendingSegments.first());
+        }
+        try {
+            journal.append(nextSegment, streamSourceIndex, (long) (lsp.totalDuration * 1000), playlistUrl, edgeUrl);
+        } catch (IOException e) {
+            LOG.warn("Couldn't update download journal in {}: {}", downloadDir, e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a request, which is tagged with this download, so that it can be cancelled by {@link #abort()}
+     */
+    protected Request createRequest(String url) {
+        return new Request.Builder().url(url).addHeader("connection", "keep-alive").tag(this).build();
+    }
+
+    protected LiveStreamingPlaylist parseSegments(String segments, int nextSegment) throws IOException {
+        Request request = createRequest(segments);
+        Response response = client.execute(request);
+        try {
+            return parseSegments(segments, response, nextSegment);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Parses the media playlist. Only segments with a sequence number greater or equal than <code>nextSegment</code>
+     * are included in {@link LiveStreamingPlaylist#segments}
+     */
+    protected LiveStreamingPlaylist parseSegments(String segments, Response response, int nextSegment) throws IOException {
+        if(!response.isSuccessful()) {
+            throw new IOException("Couldn't load playlist " + segments + ": " + response.code() + " - " + response.message());
+        }
+
+        if(playlistParser == null) {
+            playlistParser = new MediaPlaylistParser(segments);
+        }
+        LiveStreamingPlaylist lsp = playlistParser.parse(response.body().source(), nextSegment);
+        metrics.playlistPolled(lsp.getNextSequence() - 1, response.receivedResponseAtMillis() - response.sentRequestAtMillis());
+        return lsp;
+    }
+
+    /**
+     * Loads the master playlist and remembers its renditions in {@link #streamSources}
+     *
+     * @param streamUrlIndex the index of the rendition to record or -1 for the best rendition
+     * @return the URL of the media playlist of the selected rendition
+     */
+    protected String parseMaster(String url, int streamUrlIndex) throws IOException, ParseException, PlaylistException {
+        MasterPlaylist master = Chaturbate.getMasterPlaylist(url, client);
+        if(master == null) {
+            return null;
+        }
+        String baseUri = url.substring(0, url.lastIndexOf('/') + 1);
+        List<StreamSource> sources = new ArrayList<>();
+        for (PlaylistData data : master.getPlaylists()) {
+            StreamSource src = new StreamSource();
+            if(data.hasStreamInfo()) {
+                src.bandwidth = data.getStreamInfo().getBandwidth();
+                src.height = data.getStreamInfo().hasResolution() ? data.getStreamInfo().getResolution().height : 0;
+            }
+            String uri = data.getUri();
+            src.mediaPlaylistUrl = uri.startsWith("http") ? uri : baseUri + uri;
+            sources.add(src);
+        }
+        if(sources.isEmpty()) {
+            return null;
+        }
+        streamSources = sources;
+        if(streamUrlIndex >= 0 && streamUrlIndex < sources.size()) {
+            streamSourceIndex = streamUrlIndex;
+        } else {
+            streamSourceIndex = sources.size() - 1;
+        }
+        selectedStreamSourceIndex = streamSourceIndex;
+        return sources.get(streamSourceIndex).mediaPlaylistUrl;
+    }
+
+    /**
+     * Switches to the rendition, which has been requested by the bandwidth governor or the adaptive
+     * stream selection. Has to be called by the playlist polling before the playlist is requested.
+     *
+     * @return the URL of the new media playlist or null, if the rendition has not been changed
+     */
+    protected String switchStreamSource() {
+        int requested = requestedStreamSource;
+        if(requested < 0) {
+            return null;
+        }
+        requestedStreamSource = -1;
+        if(requested == streamSourceIndex) {
+            return null;
+        }
+        LOG.info("Switching {} from {} to {}", model, streamSources.get(streamSourceIndex), streamSources.get(requested));
+        streamSourceIndex = requested;
+        lastStreamSourceSwitch = System.currentTimeMillis();
+        adaptiveSelection.reset();
+        playlistParser = null;
+        return streamSources.get(requested).mediaPlaylistUrl;
+    }
+
+    /**
+     * @return the index of the rendition with the next lower bandwidth or -1, if there is none
+     */
+    private int getLowerStreamSource() {
+        int current = streamSources.get(streamSourceIndex).bandwidth;
+        int lower = -1;
+        for (int i = 0; i < streamSources.size(); i++) {
+            int bandwidth = streamSources.get(i).bandwidth;
+            if(bandwidth < current && (lower < 0 || bandwidth > streamSources.get(lower).bandwidth)) {
+                lower = i;
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * @return the index of the rendition with the next higher bandwidth or -1, if there is none. Renditions
+     *         above the one selected for the model are not considered.
+     */
+    private int getHigherStreamSource() {
+        int current = streamSources.get(streamSourceIndex).bandwidth;
+        int max = streamSources.get(selectedStreamSourceIndex).bandwidth;
+        int higher = -1;
+        for (int i = 0; i < streamSources.size(); i++) {
+            int bandwidth = streamSources.get(i).bandwidth;
+            if(bandwidth > current && bandwidth <= max && (higher < 0 || bandwidth < streamSources.get(higher).bandwidth)) {
+                higher = i;
+            }
+        }
+        return higher;
+    }
+
+    private void requestStepDown(String reason) {
+        if(streamSourceIndex < 0 || requestedStreamSource >= 0
+                || System.currentTimeMillis() - lastStreamSourceSwitch < STEP_DOWN_COOLDOWN) {
+            return;
+        }
+        int lower = getLowerStreamSource();
+        if(lower >= 0) {
+            LOG.debug("Stepping down {}: {}", model, reason);
+            requestedStreamSource = lower;
+        }
+    }
+
+    private void requestStepUp() {
+        if(streamSourceIndex < 0 || requestedStreamSource >= 0
+                || System.currentTimeMillis() - lastStreamSourceSwitch < STEP_UP_COOLDOWN) {
+            return;
+        }
+        int higher = getHigherStreamSource();
+        if(higher >= 0 && adaptiveSelection.hasHeadroom(streamSources.get(streamSourceIndex).bandwidth, streamSources.get(higher).bandwidth)) {
+            LOG.debug("Stepping up {}, the download keeps up with the stream", model);
+            requestedStreamSource = higher;
+        }
+    }
+
+    /**
+     * Determines the segments of the playlist, which have not been downloaded yet. If segments
+     * have been dropped from the playlist before we could get them, we try to reload them by
+     * guessing their URL.
+     *
+     * @param nextSegment the sequence number of the next expected segment or 0, if nothing has been downloaded yet
+     * @param lsp the playlist parsed with the same <code>nextSegment</code>
+     */
+    protected List<Segment> getNewSegments(int nextSegment, LiveStreamingPlaylist lsp, Model model) throws IOException {
+        List<Segment> newSegments = new ArrayList<>();
+        if(nextSegment > 0 && lsp.seq > nextSegment && !lsp.segments.isEmpty()) {
+            // the segments are counted as missed by segmentFailed, if they can't be reloaded
+            LOG.warn("Missed segments {} < {} in download for {}", nextSegment, lsp.seq, model);
+            String first = lsp.segments.get(0);
+            int seq = lsp.seq;
+            for (int i = nextSegment; i < lsp.seq; i++) {
+                URL segmentUrl = new URL(first.replaceAll(Integer.toString(seq), Integer.toString(i)));
+                if(isRecovered(segmentUrl)) {
+                    continue;
+                }
+                LOG.debug("Reloading segment {} for model {}", i, model.getName());
+                newSegments.add(new Segment(i, segmentUrl, lsp.targetDuration));
+            }
+            if(adaptive) {
+                requestStepDown("segments have been missed");
+            }
+        }
+        int seq = lsp.getNextSequence() - lsp.segments.size();
+        for (int i = 0; i < lsp.segments.size(); i++) {
+            URL segmentUrl = new URL(lsp.segments.get(i));
+            if(!isRecovered(segmentUrl)) {
+                newSegments.add(new Segment(seq + i, segmentUrl, lsp.segmentDurations.get(i)));
+            }
+        }
+        return newSegments;
+    }
+
+    /**
+     * @return true, if the segment is in the playlist of a resumed recording. The download of a resumed recording
+     * restarts at the first segment, which was pending, so the segments after it might have been downloaded already.
+     */
+    private boolean isRecovered(URL segmentUrl) {
+        return segmentWriter == null && playlist != null && playlist.isRecovered(getSegmentFile(segmentUrl).getFileName().toString());
+    }
+
+    /**
+     * Calculates the time to wait until the playlist is requested again
+     */
+    protected long getPlaylistReloadWait(LiveStreamingPlaylist lsp) {
+        return pollScheduler.update(lsp);
+    }
+
+    protected Path getSegmentFile(URL segmentUrl) {
+        File path = new File(segmentUrl.getPath());
+        return FileSystems.getDefault().getPath(downloadDir.toString(), path.getName());
+    }
+
+    /**
+     * Has to be called for every segment in the order of the sequence numbers, before the download of the segment starts
+     */
+    protected void segmentQueued(Segment segment) {
+        metrics.segmentQueued(segment.seq);
+        pendingSegments.add(segment.seq);
+        if(segmentWriter != null) {
+            segmentWriter.queued(segment.seq);
+        }
+    }
+
+    /**
+     * Writes a downloaded segment. Responses with an error status fail with an IOException, for 404 with a
+     * {@link FileNotFoundException}. A corrupt segment fails with an {@link InvalidSegmentException}, so that it
+     * can be requested again, unless it is the last attempt. Then it is written anyway.
+     */
+    protected void segmentDownloaded(Segment segment, Response response, boolean lastAttempt) throws IOException {
+        if(!response.isSuccessful()) {
+            String msg = "Couldn't download segment " + segment.seq + ": " + response.code() + " - " + response.message();
+            if(response.code() == 404) {
+                throw new FileNotFoundException(msg);
+            }
+            throw new IOException(msg);
+        }
+        ResponseBody body = response.body();
+        long allocatedBefore = SegmentWriteMetrics.currentThreadAllocatedBytes();
+        BufferedSource source = body.source();
+        ThrottledSource throttledSource = null;
+        if(governor.isLimited()) {
+            throttledSource = governor.throttle(source, model.getPriority());
+            source = Okio.buffer(throttledSource);
+        }
+        TsValidator validator = null;
+        if(segment.url.getPath().endsWith(".ts")) {
+            validator = new TsValidator(source, !lastAttempt);
+            source = Okio.buffer(validator);
+        }
+        long bytes;
+        try {
+            if(segmentWriter != null) {
+                Buffer data = new Buffer();
+                source.readAll(data);
+                bytes = data.size();
+                segmentWriter.completed(segment.seq, data, segment.duration);
+            } else {
+                Path file = getSegmentFile(segment.url);
+                bytes = writeSegment(source, body.contentLength(), file);
+                playlist.add(segment.seq, file.getFileName().toString(), segment.duration);
+            }
+        } catch(InvalidSegmentException e) {
+            LOG.debug("Segment {} of {} is corrupt: {}", segment.seq, model, e.getMessage());
+            metrics.segmentCorrupt();
+            throw e;
+        }
+        if(validator != null && validator.getError() != null) {
+            LOG.warn("Segment {} of {} is corrupt, keeping it anyway: {}", segment.seq, model, validator.getError().getMessage());
+            metrics.segmentCorrupt();
+        }
+        long allocated = allocatedBefore >= 0 ? SegmentWriteMetrics.currentThreadAllocatedBytes() - allocatedBefore : -1;
+        SegmentWriteMetrics.getInstance().segmentWritten(bytes, allocated);
+        metrics.segmentDownloaded(segment.seq, bytes);
+        pendingSegments.remove(segment.seq);
+        completeTermination();
+        if(throttledSource != null) {
+            metrics.throttled(throttledSource.getThrottled());
+            if(governor.shouldStepDown(model.getPriority(), throttledSource.getThrottled(), segment.duration)) {
+                requestStepDown("throttled in favour of downloads with a higher priority");
+            }
+        }
+        if(adaptive) {
+            adaptiveSelection.segmentDownloaded(System.currentTimeMillis() - response.sentRequestAtMillis(), segment.duration);
+            if(adaptiveSelection.isFallingBehind()) {
+                requestStepDown("segment downloads are slower than the stream");
+            } else {
+                requestStepUp();
+            }
+        }
+    }
+
+    /**
+     * Has to be called, if the download of a segment has failed for good. The segment is counted as missed.
+     */
+    protected void segmentFailed(Segment segment) {
+        metrics.segmentsMissed(1);
+        pendingSegments.remove(segment.seq);
+        if(segmentWriter == null) {
+            // remove the incomplete file of a failed attempt, the segment is not in the playlist
+            try {
+                Files.deleteIfExists(getSegmentFile(segment.url));
+            } catch (IOException e) {
+                LOG.debug("Couldn't delete incomplete segment {}", segment.url, e);
+            }
+        } else {
+            try {
+                segmentWriter.failed(segment.seq);
+            } catch (IOException e) {
+                LOG.error("Couldn't write segments to {}", downloadDir, e);
+            }
+        }
+        completeTermination();
+    }
+
+    @Override
+    public CompletableFuture<Void> getTermination() {
+        return termination;
+    }
+
+    /**
+     * Cancels all requests of this download and closes the output. Segments, which have been downloaded,
+     * but not written yet, are written. Segments, which are still downloading, are discarded.
+     */
+    protected void abort() {
+        running = false;
+        alive = false;
+        client.cancel(this);
+        if(segmentWriter != null) {
+            try {
+                segmentWriter.close();
+            } catch (IOException e) {
+                LOG.error("Couldn't close output in {}", downloadDir, e);
+            }
+        }
+        flushPlaylist();
+    }
+
+    /**
+     * Completes the output of the download. Has to be called, when no more segments are queued. The download
+     * terminates, when the outstanding segments have been written or have failed.
+     */
+    protected void finishOutput() {
+        if(journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOG.error("Couldn't close download journal in {}", downloadDir, e);
+            }
+        }
+        if(segmentWriter != null) {
+            try {
+                // the writer is closed, when the outstanding segments have been written
+                segmentWriter.finish();
+            } catch (IOException e) {
+                LOG.error("Couldn't write segments to {}", downloadDir, e);
+            }
+        }
+        finishing = true;
+        completeTermination();
+    }
+
+    /**
+     * Completes the termination, if the download has finished, all queued segments have been written or have failed
+     * and the output has been closed. Otherwise the termination is completed by the last segment.
+     */
+    private void completeTermination() {
+        if(!finishing || !pendingSegments.isEmpty() || (segmentWriter != null && !segmentWriter.isClosed())) {
+            return;
+        }
+        // segments, which have been added after the last rewrite, are written now
+        flushPlaylist();
+        if(termination.complete(null)) {
+            LOG.debug("Download for {} terminated", model);
+        }
+    }
+
+    private void flushPlaylist() {
+        if(playlist != null) {
+            try {
+                playlist.flush();
+            } catch (IOException e) {
+                LOG.error("Couldn't write playlist in {}", downloadDir, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the segment to a file. The file channel reads the data from the source with
+     * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}, so the data is copied
+     * once from okio's pooled segments into the temporary direct buffer of the channel and no buffers are
+     * allocated per segment. If the content length is known, the length of the written data is verified.
+     *
+     * @param contentLength the expected length of the segment or -1, if it is unknown
+     * @return the number of bytes written
+     */
+    protected static long writeSegment(BufferedSource source, long contentLength, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            long written = 0;
+            long transferred;
+            // the transfer ends, when the source is exhausted
+            while((transferred = channel.transferFrom(source, written, Long.MAX_VALUE)) > 0) {
+                written += transferred;
+            }
+            if(contentLength > 0 && written != contentLength) {
+                throw new IOException("Segment " + file.getFileName() + " is incomplete: " + written + " of " + contentLength + " bytes");
+            }
+            return written;
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        // the download is alive until the last segment has been written
+        return !termination.isDone();
+    }
+
+    @Override
+    public File getDirectory() {
+        return downloadDir != null ? downloadDir.toFile() : null;
+    }
+
+    @Override
+    public DownloadStats getStats() {
+        return metrics.snapshot(model != null ? model.getName() : null);
+    }
+
+    public static class LiveStreamingPlaylist {
+        /** media sequence number of the first segment in the playlist */
+        public int seq = 0;
+        /** number of all segments in the playlist */
+        public int segmentCount = 0;
+        public float totalDuration = 0;
+        public float lastSegDuration = 0;
+        public float targetDuration = 0;
+        /** URLs of the new segments */
+        public List<String> segments = new ArrayList<>();
+        /** EXTINF durations of the new segments */
+        public List<Float> segmentDurations = new ArrayList<>();
+
+        public int getNextSequence() {
+            return seq + segmentCount;
+        }
+    }
+
+    public static class Segment {
+        public int seq;
+        public URL url;
+        public float duration;
+
+        public Segment(int seq, URL url, float duration) {
+            this.seq = seq;
+            this.url = url;
+            this.duration = duration;
+        }
+
+        @Override
+        public String toString() {
+            return url.toString();
+        }
+    }
+}
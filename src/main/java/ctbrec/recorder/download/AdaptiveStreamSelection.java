@@ -0,0 +1,58 @@
+package ctbrec.recorder.download;
+
+/**
+ * Measures, if a download keeps up with the stream. For every segment the time needed for the download
+ * is compared to the duration of the segment. The ratio is smoothed with an exponential moving average.
+ * A download falls behind, if the ratio exceeds {@link #FALLING_BEHIND}. A higher rendition is considered,
+ * if the ratio, projected to the bandwidth of the higher rendition, stays below {@link #HEADROOM}
+ * for {@link #MIN_SAMPLES} segments.
+ */
+public class AdaptiveStreamSelection {
+
+    static final double FALLING_BEHIND = 1.0;
+    static final double HEADROOM = 0.5;
+    static final int MIN_SAMPLES = 10;
+    private static final double SMOOTHING = 0.2;
+
+    private double ratio = 0;
+    private int samples = 0;
+
+    /**
+     * @param downloadTime the time the download of the segment took in ms
+     * @param segmentDuration the duration of the segment in seconds
+     */
+    public synchronized void segmentDownloaded(long downloadTime, float segmentDuration) {
+        if(segmentDuration <= 0) {
+            return;
+        }
+        double current = downloadTime / (segmentDuration * 1000.0);
+        ratio = samples == 0 ? current : SMOOTHING * current + (1 - SMOOTHING) * ratio;
+        samples++;
+    }
+
+    public synchronized boolean isFallingBehind() {
+        return samples >= 3 && ratio > FALLING_BEHIND;
+    }
+
+    /**
+     * @return true, if a rendition with the bandwidth <code>higher</code> could probably be downloaded in time
+     */
+    public synchronized boolean hasHeadroom(int current, int higher) {
+        if(samples < MIN_SAMPLES || current <= 0) {
+            return false;
+        }
+        return ratio * higher / current < HEADROOM;
+    }
+
+    /**
+     * Forgets the measurements, has to be called after the rendition has been changed
+     */
+    public synchronized void reset() {
+        ratio = 0;
+        samples = 0;
+    }
+
+    public synchronized double getRatio() {
+        return ratio;
+    }
+}
@@ -0,0 +1,238 @@
+package ctbrec.recorder.download;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.iheartradio.m3u8.ParseException;
+import com.iheartradio.m3u8.PlaylistException;
+
+import ctbrec.Config;
+import ctbrec.HttpClient;
+import ctbrec.Model;
+import ctbrec.recorder.Chaturbate;
+import ctbrec.recorder.StreamInfo;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * HLS download, which doesn't block a thread per stream. The playlist polling is driven by a
+ * shared timer and all requests are executed asynchronously by the HTTP client's dispatcher.
+ * The bodies of the segment responses are written and throttled by the workers of the
+ * {@link SegmentDownloadScheduler}, so that the dispatcher threads are never blocked by file I/O
+ * or the {@link BandwidthGovernor}. In contrast to {@link HlsDownload}, {@link #start(Model, Config)}
+ * returns as soon as the download is set up.
+ */
+public class AsyncHlsDownload extends AbstractHlsDownload {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(AsyncHlsDownload.class);
+    private static final int MAX_SEGMENT_ATTEMPTS = 3;
+
+    private ScheduledExecutorService timer;
+    private SegmentDownloadScheduler scheduler;
+    private AtomicBoolean terminated = new AtomicBoolean(false);
+    private String segmentsUrl;
+    private int nextSegment = 0;
+    private volatile ScheduledFuture<?> playlistReload;
+
+    public AsyncHlsDownload(HttpClient client, BandwidthGovernor governor, HedgedRequests hedgedRequests, ScheduledExecutorService timer,
+            SegmentDownloadScheduler scheduler) {
+        super(client, governor, hedgedRequests);
+        this.timer = timer;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void start(Model model, Config config) throws IOException {
+        this.model = model;
+        if(!alive) {
+            // stopped before it has been started
+            return;
+        }
+        try {
+            running = true;
+            StreamInfo streamInfo = Chaturbate.getStreamInfo(model, client);
+            if(!Objects.equals(streamInfo.room_status, "public")) {
+                throw new IOException(model.getName() +"'s room is not public");
+            }
+
+            segmentsUrl = parseMaster(streamInfo.url, model.getStreamUrlIndex());
+            if(segmentsUrl == null) {
+                throw new IOException("Couldn't determine segments uri");
+            }
+            nextSegment = createOrResumeDownloadDir(model, config, segmentsUrl);
+            governor.register(this, model);
+            schedulePlaylistReload(0);
+        } catch(ParseException e) {
+            terminate();
+            throw new IOException("Couldn't parse stream information", e);
+        } catch(PlaylistException e) {
+            terminate();
+            throw new IOException("Couldn't parse HLS playlist", e);
+        } catch(Exception e) {
+            terminate();
+            throw new IOException("Couldn't start download", e);
+        }
+    }
+
+    private void schedulePlaylistReload(long wait) {
+        if(!running) {
+            terminate();
+            return;
+        }
+        try {
+            playlistReload = timer.schedule(this::reloadPlaylist, wait, MILLISECONDS);
+        } catch(RejectedExecutionException e) {
+            LOG.debug("Timer has been shut down. Stopping download for {}", model);
+            terminate();
+        }
+    }
+
+    private void reloadPlaylist() {
+        if(!running) {
+            terminate();
+            return;
+        }
+        // an exception on the timer would be swallowed by the ScheduledFuture and the download would hang
+        try {
+            String switched = switchStreamSource();
+            if(switched != null) {
+                segmentsUrl = switched;
+            }
+            enqueuePlaylistRequest();
+        } catch(Exception e) {
+            LOG.error("Couldn't reload playlist for {}", model, e);
+            terminate();
+        }
+    }
+
+    private void enqueuePlaylistRequest() {
+        client.enqueue(createRequest(segmentsUrl), new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    LiveStreamingPlaylist lsp = parseSegments(segmentsUrl, response, nextSegment);
+                    List<Segment> newSegments = getNewSegments(nextSegment, lsp, model);
+                    for (Segment segment : newSegments) {
+                        segmentQueued(segment);
+                        downloadSegment(segment, 0);
+                    }
+                    updateJournal(lsp, segmentsUrl);
+
+                    long wait = getPlaylistReloadWait(lsp);
+                    nextSegment = lsp.getNextSequence();
+                    schedulePlaylistReload(wait);
+                } catch(IOException e) {
+                    LOG.debug("Couldn't load playlist for {}: {}", model, e.getMessage());
+                    terminate();
+                } catch(Exception e) {
+                    LOG.error("Couldn't process playlist for {}", model, e);
+                    terminate();
+                } finally {
+                    response.close();
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LOG.debug("Couldn't load playlist for {}: {}", model, e.getMessage());
+                terminate();
+            }
+        });
+    }
+
+    private void downloadSegment(Segment segment, int attempt) {
+        LOG.trace("Downloading segment {}", segment);
+        Request request;
+        try {
+            request = createRequest(segment.url.toString());
+        } catch(Exception e) {
+            // the segment has to fail, otherwise the download never terminates
+            LOG.error("Couldn't download segment {} for {}", segment, model, e);
+            segmentFailed(segment);
+            return;
+        }
+        hedgedRequests.enqueue(request, segmentLatency, metrics, new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    scheduler.submit(AsyncHlsDownload.this, () -> {
+                        processSegment(segment, response, attempt);
+                        return null;
+                    });
+                } catch(RejectedExecutionException e) {
+                    LOG.debug("Segment download scheduler has been shut down. Discarding segment {}", segment);
+                    response.close();
+                    segmentFailed(segment);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                retry(segment, attempt, e);
+            }
+        });
+    }
+
+    /**
+     * Reads the body of a segment response. Runs on a worker of the {@link SegmentDownloadScheduler}.
+     */
+    private void processSegment(Segment segment, Response response, int attempt) {
+        try {
+            segmentDownloaded(segment, response, attempt + 1 >= MAX_SEGMENT_ATTEMPTS);
+        } catch(FileNotFoundException e) {
+            LOG.debug("Segment does not exist {}", segment.url.getFile());
+            segmentFailed(segment);
+        } catch(Exception e) {
+            retry(segment, attempt, e);
+        } finally {
+            response.close();
+        }
+    }
+
+    private void retry(Segment segment, int attempt, Exception cause) {
+        if(!running) {
+            segmentFailed(segment);
+        } else if(attempt + 1 < MAX_SEGMENT_ATTEMPTS) {
+            LOG.error("Error while downloading segment. Retrying " + attempt, cause);
+            metrics.segmentRetried();
+            downloadSegment(segment, attempt + 1);
+        } else {
+            LOG.error("Couldn't download segment {} for {}", segment, model, cause);
+            segmentFailed(segment);
+        }
+    }
+
+    private void terminate() {
+        running = false;
+        alive = false;
+        if(terminated.compareAndSet(false, true)) {
+            governor.unregister(this);
+            finishOutput();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> stop() {
+        abort();
+        ScheduledFuture<?> reload = playlistReload;
+        if(reload != null) {
+            reload.cancel(false);
+        }
+        terminate();
+        return termination;
+    }
+}
@@ -0,0 +1,192 @@
+package ctbrec.recorder.download;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ctbrec.Model;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * Recorder-wide token bucket, which limits the bandwidth used by all segment downloads.
+ * <p>
+ * The bucket holds the tokens for one second of the configured rate. A part of the bucket is reserved
+ * for downloads with a higher priority: a download with the lowest priority may only take tokens, while the
+ * bucket is more than half full, a download with {@link Model#MAX_PRIORITY} may empty it. If the uplink is
+ * saturated, the low priority downloads are throttled first. They are also asked to step down to a lower
+ * rendition, if they spend a lot of time waiting for tokens, see {@link #shouldStepDown(int, long, float)}.
+ * <p>
+ * The bucket is guarded by a {@link ReentrantLock}, so that a download, which runs on a virtual thread,
+ * doesn't pin its carrier thread while it waits for tokens.
+ */
+public class BandwidthGovernor {
+
+    private static final double RESERVE_SHARE = 0.5;
+    private static final long MIN_CAPACITY = 64 * 1024;
+
+    /** bytes per second or 0, if the bandwidth is unlimited */
+    private final long rate;
+    private double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private Map<Object, Model> downloads = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    /** never signalled, the waiting downloads wake up, when the tokens they need have been refilled */
+    private final Condition refilled = lock.newCondition();
+
+    /**
+     * @param rate bytes per second or 0 for unlimited bandwidth
+     */
+    public BandwidthGovernor(long rate) {
+        this.rate = Math.max(0, rate);
+        capacity = Math.max(rate, MIN_CAPACITY);
+        tokens = capacity;
+    }
+
+    public boolean isLimited() {
+        return rate > 0;
+    }
+
+    /**
+     * Registers a running download, so that lower priority downloads know, that they should make room
+     */
+    public void register(Object owner, Model model) {
+        lock.lock();
+        try {
+            downloads.put(owner, model);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unregister(Object owner) {
+        lock.lock();
+        try {
+            downloads.remove(owner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes tokens for the given number of bytes from the bucket. Blocks until enough tokens are available.
+     *
+     * @return the time waited in nanoseconds
+     */
+    public long acquire(int priority, long bytes) throws InterruptedIOException {
+        if(!isLimited()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        double reserve = reserve(priority);
+        // requests larger than the usable part of the bucket would never be served
+        double needed = Math.min(bytes, capacity - reserve);
+        lock.lock();
+        try {
+            while(true) {
+                refill();
+                double available = tokens - reserve;
+                if(available >= needed) {
+                    tokens -= bytes;
+                    return System.nanoTime() - start;
+                }
+                long waitMillis = Math.max(1, (long) Math.ceil((needed - available) * 1000 / rate));
+                refilled.await(waitMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Decides, if a download should switch to a lower rendition. That is the case, if the download
+     * has been throttled for more than half of the segment duration and a download with a higher priority
+     * is running, which would profit from the bandwidth.
+     *
+     * @param throttled the time the download of the last segment has been throttled in nanoseconds
+     * @param segmentDuration the duration of the segment in seconds
+     */
+    public boolean shouldStepDown(int priority, long throttled, float segmentDuration) {
+        if(!isLimited() || segmentDuration <= 0 || throttled < TimeUnit.MILLISECONDS.toNanos((long) (segmentDuration * 500))) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (Model other : downloads.values()) {
+                if(other.getPriority() > priority) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wraps the source of a segment download, so that every read is accounted for in the token bucket
+     */
+    public ThrottledSource throttle(Source source, int priority) {
+        return new ThrottledSource(source, priority);
+    }
+
+    private double reserve(int priority) {
+        int p = Math.max(Model.MIN_PRIORITY, Math.min(Model.MAX_PRIORITY, priority));
+        return capacity * RESERVE_SHARE * (Model.MAX_PRIORITY - p) / (Model.MAX_PRIORITY - Model.MIN_PRIORITY);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / (double) TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    public class ThrottledSource extends ForwardingSource {
+        private int priority;
+        private long throttled = 0;
+
+        private ThrottledSource(Source delegate, int priority) {
+            super(delegate);
+            this.priority = priority;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if(read > 0) {
+                throttled += acquire(priority, read);
+            }
+            return read;
+        }
+
+        /**
+         * @return the time this source has been throttled in nanoseconds
+         */
+        public long getThrottled() {
+            return throttled;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if(!isLimited()) {
+            return "unlimited";
+        }
+        lock.lock();
+        try {
+            refill();
+            return String.format("%d KiB/s, %.0f KiB available, %d downloads", rate / 1024, tokens / 1024, downloads.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -2,13 +2,27 @@ package ctbrec.recorder.download;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import ctbrec.Config;
 import ctbrec.Model;
 
 public interface Download {
     public void start(Model model, Config config) throws IOException;
-    public void stop();
+    /**
+     * Stops the download. Outstanding requests are cancelled and segments, which have not been
+     * downloaded yet, are dropped.
+     *
+     * @return a future, which completes, when the download has terminated
+     */
+    public CompletableFuture<Void> stop();
+
+    /**
+     * @return a future, which completes, when the download has terminated, because the stream has ended,
+     *         the download failed or it has been stopped
+     */
+    public CompletableFuture<Void> getTermination();
     public boolean isAlive();
     public File getDirectory();
+    public DownloadStats getStats();
 }
@@ -0,0 +1,204 @@
+package ctbrec.recorder.download;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of a running download. When a playlist poll has moved the next segment or the
+ * download has switched to another playlist, a line <code>time nextSegment streamSource window playlistUrl edgeUrl</code>
+ * is appended, so that the download can be continued in the same directory, if the recorder has been restarted
+ * while the stream was still live. When the recording is post-processed, the line <code>END time</code> is appended.
+ * <p>
+ * Only the last entry is needed to resume a download, so the journal is compacted to its last entry, when it
+ * is opened and after {@link #MAX_ENTRIES} entries have been appended.
+ */
+public class DownloadJournal implements Closeable {
+
+    public static final String FILE = "download.journal";
+    private static final String END = "END";
+    /** time, in which a restarted recorder gets the chance to resume a download, in addition to the playlist window */
+    private static final long RESUME_GRACE_PERIOD = TimeUnit.MINUTES.toMillis(1);
+    /** number of entries, after which the journal is compacted */
+    private static final int MAX_ENTRIES = 1000;
+    /** size of the end of the journal, which is read to find the last entry */
+    private static final int TAIL_SIZE = 8 * 1024;
+
+    private File file;
+    private BufferedWriter writer;
+    private int entries = 0;
+    private int lastNextSegment = -1;
+    private String lastPlaylistUrl;
+
+    public DownloadJournal(File directory) throws IOException {
+        file = new File(directory, FILE);
+        compact();
+    }
+
+    /**
+     * Replaces the journal with its last entry and opens it for appending. An incomplete line, which has been
+     * written by a crashed recorder, is dropped.
+     */
+    private void compact() throws IOException {
+        if(writer != null) {
+            writer.close();
+        }
+        if(file.exists()) {
+            String last = findLastLine(file);
+            Path tmp = new File(file.getParentFile(), FILE + ".tmp").toPath();
+            Files.write(tmp, last != null ? (last + System.lineSeparator()).getBytes(StandardCharsets.UTF_8) : new byte[0]);
+            try {
+                Files.move(tmp, file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file.toPath(), REPLACE_EXISTING);
+            }
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), CREATE, WRITE, APPEND);
+        writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+        entries = 0;
+    }
+
+    /**
+     * Appends an entry, if the next segment or the playlist have changed since the last entry
+     *
+     * @param nextSegment the sequence number of the first segment, which has not been downloaded yet
+     * @param window the duration of the segments in the playlist in ms
+     */
+    public synchronized void append(int nextSegment, int streamSource, long window, String playlistUrl, String edgeUrl) throws IOException {
+        if(nextSegment == lastNextSegment && Objects.equals(playlistUrl, lastPlaylistUrl)) {
+            return;
+        }
+        if(entries >= MAX_ENTRIES) {
+            compact();
+        }
+        writer.write(System.currentTimeMillis() + " " + nextSegment + " " + streamSource + " " + window + " " + playlistUrl + " " + edgeUrl);
+        writer.newLine();
+        writer.flush();
+        entries++;
+        lastNextSegment = nextSegment;
+        lastPlaylistUrl = playlistUrl;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Marks the journal of a recording as finished, the download can't be resumed afterwards.
+     * A journal, which has been marked already, is not changed.
+     */
+    public static void markFinished(File directory) throws IOException {
+        File journal = new File(directory, FILE);
+        String last = journal.exists() ? findLastLine(journal) : null;
+        if(journal.exists() && (last == null || !last.startsWith(END))) {
+            Files.write(journal.toPath(), (END + " " + System.currentTimeMillis() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8), APPEND);
+        }
+    }
+
+    /**
+     * @return true, if the download of the recording has been interrupted recently enough, that the
+     *         segments might still be in the playlist
+     */
+    public static boolean isResumable(File directory) {
+        Entry last = readLast(directory);
+        return last != null && System.currentTimeMillis() - last.time < last.window + RESUME_GRACE_PERIOD;
+    }
+
+    /**
+     * @return the last entry of the journal or null, if there is no journal, it is empty or it has been finished
+     */
+    public static Entry readLast(File directory) {
+        File journal = new File(directory, FILE);
+        if(!journal.exists()) {
+            return null;
+        }
+        String last;
+        try {
+            last = findLastLine(journal);
+        } catch (IOException e) {
+            return null;
+        }
+        if(last == null) {
+            return null;
+        }
+        String[] fields = last.trim().split(" ");
+        if(fields[0].equals(END) || fields.length != 6) {
+            return null;
+        }
+        try {
+            Entry entry = new Entry();
+            entry.time = Long.parseLong(fields[0]);
+            entry.nextSegment = Integer.parseInt(fields[1]);
+            entry.streamSource = Integer.parseInt(fields[2]);
+            entry.window = Long.parseLong(fields[3]);
+            entry.playlistUrl = fields[4];
+            entry.edgeUrl = fields[5];
+            return entry;
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the end of the journal only, because the journal of a long running download can be large
+     *
+     * @return the last complete line or null, if the journal doesn't contain a complete line
+     */
+    private static String findLastLine(File journal) throws IOException {
+        byte[] tail;
+        boolean cutOff;
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "r")) {
+            int size = (int) Math.min(raf.length(), TAIL_SIZE);
+            cutOff = raf.length() > size;
+            tail = new byte[size];
+            raf.seek(raf.length() - size);
+            raf.readFully(tail);
+        }
+        String text = new String(tail, StandardCharsets.UTF_8);
+        // the last line is incomplete, if the recorder crashed while writing it
+        int end = text.lastIndexOf('\n');
+        if(end < 0) {
+            return null;
+        }
+        List<String> lines = Arrays.asList(text.substring(0, end).split("\r?\n"));
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            // the first line of the tail is probably cut off
+            if(i == 0 && cutOff) {
+                break;
+            }
+            if(!lines.get(i).trim().isEmpty()) {
+                return lines.get(i).trim();
+            }
+        }
+        return null;
+    }
+
+    public static class Entry {
+        public long time;
+        public int nextSegment;
+        public int streamSource;
+        public long window;
+        public String playlistUrl;
+        public String edgeUrl;
+    }
+}
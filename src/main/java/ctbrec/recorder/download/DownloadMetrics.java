@@ -0,0 +1,99 @@
+package ctbrec.recorder.download;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a download. The update methods are called from the download threads
+ * and don't lock, only {@link #snapshot(String)} synchronizes to calculate the download rate.
+ */
+public class DownloadMetrics {
+
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private LongAdder segmentsDownloaded = new LongAdder();
+    private LongAdder bytesDownloaded = new LongAdder();
+    private LongAdder retries = new LongAdder();
+    private LongAdder missedSegments = new LongAdder();
+    private LongAdder throttled = new LongAdder();
+    private LongAdder corruptSegments = new LongAdder();
+    private LongAdder hedges = new LongAdder();
+    private LongAdder hedgeWins = new LongAdder();
+    private volatile long playlistPollLatency = 0;
+    private volatile int liveEdge = -1;
+    private AtomicInteger lastDownloaded = new AtomicInteger(-1);
+
+    private long rateSampleTime = System.nanoTime();
+    private long rateSampleBytes = 0;
+    private double bytesPerSecond = 0;
+
+    public void playlistPolled(int liveEdge, long latency) {
+        this.liveEdge = liveEdge;
+        this.playlistPollLatency = latency;
+    }
+
+    public void segmentQueued(int seq) {
+        // the lag is measured from the segment before the first one we have seen
+        lastDownloaded.compareAndSet(-1, seq - 1);
+    }
+
+    public void segmentDownloaded(int seq, long bytes) {
+        segmentsDownloaded.increment();
+        bytesDownloaded.add(bytes);
+        lastDownloaded.accumulateAndGet(seq, Math::max);
+    }
+
+    public void segmentRetried() {
+        retries.increment();
+    }
+
+    public void segmentsMissed(int count) {
+        missedSegments.add(count);
+    }
+
+    public void segmentCorrupt() {
+        corruptSegments.increment();
+    }
+
+    public void segmentHedged() {
+        hedges.increment();
+    }
+
+    public void hedgeWon() {
+        hedgeWins.increment();
+    }
+
+    /**
+     * @param nanos time a segment download has been throttled
+     */
+    public void throttled(long nanos) {
+        throttled.add(nanos);
+    }
+
+    public synchronized DownloadStats snapshot(String model) {
+        DownloadStats stats = new DownloadStats();
+        stats.model = model;
+        stats.segmentsDownloaded = segmentsDownloaded.sum();
+        stats.bytesDownloaded = bytesDownloaded.sum();
+        stats.playlistPollLatency = playlistPollLatency;
+        stats.retries = retries.sum();
+        stats.missedSegments = missedSegments.sum();
+        stats.corruptSegments = corruptSegments.sum();
+        stats.hedges = hedges.sum();
+        stats.hedgeWins = hedgeWins.sum();
+        stats.throttledTime = TimeUnit.NANOSECONDS.toMillis(throttled.sum());
+        int edge = liveEdge;
+        int last = lastDownloaded.get();
+        stats.segmentLag = edge >= 0 && last >= 0 ? Math.max(0, edge - last) : 0;
+
+        long now = System.nanoTime();
+        if(now - rateSampleTime >= RATE_INTERVAL) {
+            bytesPerSecond = (stats.bytesDownloaded - rateSampleBytes) / ((now - rateSampleTime) / (double) TimeUnit.SECONDS.toNanos(1));
+            rateSampleTime = now;
+            rateSampleBytes = stats.bytesDownloaded;
+        }
+        stats.bytesPerSecond = bytesPerSecond;
+        return stats;
+    }
+}
@@ -0,0 +1,35 @@
+package ctbrec.recorder.download;
+
+/**
+ * Snapshot of the metrics of one running download
+ */
+public class DownloadStats {
+    /** name of the recorded model */
+    public String model;
+    public long segmentsDownloaded;
+    public long bytesDownloaded;
+    /** download rate measured over the last few seconds */
+    public double bytesPerSecond;
+    /** time between sending the last playlist request and receiving the response in ms */
+    public long playlistPollLatency;
+    /** number of segments between the live edge of the playlist and the last downloaded segment */
+    public int segmentLag;
+    public long retries;
+    /** time the segment downloads have waited for the bandwidth governor in ms */
+    public long throttledTime;
+    /** segments, which have been dropped from the playlist before they were seen, or which couldn't be downloaded */
+    public long missedSegments;
+    /** segments, which failed the transport stream validation and have been requested again */
+    public long corruptSegments;
+    /** additional requests sent for slow segment requests */
+    public long hedges;
+    /** hedges, which have been answered before the original request */
+    public long hedgeWins;
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d segments, %.1f KiB/s, poll latency %d ms, lag %d, retries %d, missed %d, corrupt %d, throttled %d ms, hedges %d (%d won)",
+                model, segmentsDownloaded, bytesPerSecond / 1024, playlistPollLatency, segmentLag, retries, missedSegments, corruptSegments, throttledTime,
+                hedges, hedgeWins);
+    }
+}
@@ -0,0 +1,264 @@
+package ctbrec.recorder.download;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.HttpClient;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends segment requests with a hedge: if the response of a request doesn't arrive within the 95th percentile
+ * of the stream's response times, a second request for the same segment is sent. The successful response, which
+ * arrives first, is used and the other request is cancelled.
+ * <p>
+ * The hedges are limited by a budget, which is the share of additional requests allowed in relation to all requests.
+ */
+public class HedgedRequests {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(HedgedRequests.class);
+
+    /** number of samples needed, before requests are hedged */
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY = 100;
+    private static final double PERCENTILE = 0.95;
+
+    private HttpClient client;
+    private ScheduledExecutorService timer;
+    private double budget;
+    private LongAdder requests = new LongAdder();
+    private LongAdder hedges = new LongAdder();
+    private LongAdder wins = new LongAdder();
+
+    /**
+     * @param budget the share of additional requests, which may be sent as hedges. 0 disables hedging.
+     */
+    public HedgedRequests(HttpClient client, ScheduledExecutorService timer, double budget) {
+        this.client = client;
+        this.timer = timer;
+        this.budget = budget;
+    }
+
+    /**
+     * Executes the request asynchronously and hedges it, if the response takes longer than usual
+     *
+     * @param latency the response times of the stream. The response time of this request is added.
+     */
+    public void enqueue(Request request, LatencyTracker latency, DownloadMetrics metrics, Callback callback) {
+        requests.increment();
+        Race race = new Race(request, latency, metrics, callback);
+        race.start();
+        long delay = latency.getCount() >= MIN_SAMPLES ? Math.max(MIN_HEDGE_DELAY, latency.getPercentile(PERCENTILE)) : -1;
+        if(budget > 0 && delay > 0) {
+            try {
+                race.hedgeTimer = timer.schedule(race::hedge, delay, MILLISECONDS);
+            } catch(RejectedExecutionException e) {
+                // timer has been shut down, no hedging
+            }
+        }
+    }
+
+    /**
+     * Executes the request with a hedge and blocks until the response arrives
+     */
+    public Response execute(Request request, LatencyTracker latency, DownloadMetrics metrics) throws IOException {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        enqueue(request, latency, metrics, new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                if(!result.complete(response)) {
+                    response.close();
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.thenAccept(Response::close);
+            throw new InterruptedIOException("Interrupted while waiting for " + request.url());
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    private synchronized boolean takeFromBudget() {
+        if(hedges.sum() + 1 > requests.sum() * budget) {
+            return false;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return the number of hedges, which have been faster than the original request
+     */
+    public long getWins() {
+        return wins.sum();
+    }
+
+    @Override
+    public String toString() {
+        long r = getRequests();
+        long h = getHedges();
+        return String.format("%d requests, %d hedged (%.1f%%), %d hedges won", r, h, r > 0 ? h * 100.0 / r : 0, getWins());
+    }
+
+    /**
+     * The requests for one segment. The first successful response wins. An error response is only used, if the
+     * other request doesn't succeed either. The request fails, if all requests have failed.
+     */
+    private class Race implements Callback {
+        private Request request;
+        private LatencyTracker latency;
+        private DownloadMetrics metrics;
+        private Callback callback;
+        private List<Call> calls = new ArrayList<>(2);
+        private Call hedge;
+        private int outstanding = 0;
+        private boolean done = false;
+        /** time, when the first request has been sent */
+        private long started;
+        /** error response, which is used, if no request succeeds */
+        private Response errorResponse;
+        private Call errorCall;
+        private volatile ScheduledFuture<?> hedgeTimer;
+
+        Race(Request request, LatencyTracker latency, DownloadMetrics metrics, Callback callback) {
+            this.request = request;
+            this.latency = latency;
+            this.metrics = metrics;
+            this.callback = callback;
+        }
+
+        synchronized void start() {
+            started = System.currentTimeMillis();
+            outstanding++;
+            calls.add(client.enqueue(request, this));
+        }
+
+        synchronized void hedge() {
+            // the first call has been cancelled, because the download has been stopped
+            if(done || calls.get(0).isCanceled() || !takeFromBudget()) {
+                return;
+            }
+            LOG.trace("Hedging request {}", request.url());
+            metrics.segmentHedged();
+            outstanding++;
+            hedge = client.enqueue(request, this);
+            calls.add(hedge);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            boolean won;
+            Response discarded = null;
+            synchronized (this) {
+                outstanding--;
+                won = !done;
+                if(won && !response.isSuccessful() && outstanding > 0) {
+                    // the other request might still succeed
+                    discarded = errorResponse;
+                    errorResponse = response;
+                    errorCall = call;
+                    won = false;
+                    response = null;
+                } else if(won) {
+                    finish(call);
+                    discarded = errorResponse;
+                    errorResponse = null;
+                }
+            }
+            if(discarded != null) {
+                discarded.close();
+            }
+            if(!won) {
+                if(response != null) {
+                    response.close();
+                }
+                return;
+            }
+            if(response.isSuccessful()) {
+                // measured from the first request, so that a winning hedge doesn't lower the percentile
+                latency.add(response.receivedResponseAtMillis() - started);
+                if(call == hedge) {
+                    wins.increment();
+                    metrics.hedgeWon();
+                }
+            }
+            callback.onResponse(call, response);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            Response error;
+            Call errorSource;
+            synchronized (this) {
+                outstanding--;
+                if(done || outstanding > 0) {
+                    return;
+                }
+                finish(call);
+                error = errorResponse;
+                errorSource = errorCall;
+                errorResponse = null;
+            }
+            if(error != null) {
+                try {
+                    callback.onResponse(errorSource, error);
+                } catch (IOException ex) {
+                    callback.onFailure(errorSource, ex);
+                }
+            } else {
+                callback.onFailure(call, e);
+            }
+        }
+
+        /**
+         * Ends the race, the other requests are cancelled
+         */
+        private void finish(Call winner) {
+            done = true;
+            if(hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            for (Call other : calls) {
+                if(other != winner) {
+                    other.cancel();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ctbrec.recorder.download;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latest latency samples of a stream to determine percentiles
+ */
+public class LatencyTracker {
+
+    private long[] samples;
+    private int count = 0;
+    private int next = 0;
+
+    public LatencyTracker(int size) {
+        samples = new long[size];
+    }
+
+    public synchronized void add(long latency) {
+        samples[next] = latency;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return the latency, which is not exceeded by the given share of the samples, or -1, if there are no samples
+     */
+    public synchronized long getPercentile(double percentile) {
+        if(count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
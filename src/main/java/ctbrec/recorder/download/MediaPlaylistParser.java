@@ -0,0 +1,124 @@
+package ctbrec.recorder.download;
+
+import java.io.IOException;
+
+import ctbrec.recorder.download.AbstractHlsDownload.LiveStreamingPlaylist;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Minimal parser for the media playlists of live streams, which is used for the playlist polling.
+ * It reads the playlist directly from the response source and only extracts the media sequence,
+ * the target duration and the segments, which have not been seen yet. Tags are compared on
+ * the raw bytes and the URIs of known segments are skipped without decoding them.
+ * <p>
+ * An instance is bound to one media playlist URL and is not thread-safe.
+ */
+public class MediaPlaylistParser {
+
+    private static final ByteString EXTM3U = ByteString.encodeUtf8("#EXTM3U");
+    private static final ByteString EXTINF = ByteString.encodeUtf8("#EXTINF:");
+    private static final ByteString MEDIA_SEQUENCE = ByteString.encodeUtf8("#EXT-X-MEDIA-SEQUENCE:");
+    private static final ByteString TARGET_DURATION = ByteString.encodeUtf8("#EXT-X-TARGETDURATION:");
+
+    private String baseUri;
+    private StringBuilder uri = new StringBuilder(256);
+
+    public MediaPlaylistParser(String playlistUrl) {
+        baseUri = playlistUrl.substring(0, playlistUrl.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @param nextSegment the sequence number of the first segment, which should be included in the result.
+     *        Segments with a lower sequence number are only counted.
+     */
+    public LiveStreamingPlaylist parse(BufferedSource source, int nextSegment) throws IOException {
+        if(!source.rangeEquals(0, EXTM3U)) {
+            throw new IOException("Not an M3U8 playlist");
+        }
+
+        LiveStreamingPlaylist lsp = new LiveStreamingPlaylist();
+        float duration = 0;
+        int index = 0;
+        while(!source.exhausted()) {
+            long lineEnd = source.indexOf((byte) '\n');
+            Buffer buffer = source.buffer();
+            byte first = buffer.getByte(0);
+            if(first == '#') {
+                if(source.rangeEquals(0, EXTINF)) {
+                    source.skip(EXTINF.size());
+                    duration = (float) readDecimal(source);
+                } else if(source.rangeEquals(0, MEDIA_SEQUENCE)) {
+                    source.skip(MEDIA_SEQUENCE.size());
+                    lsp.seq = (int) readDecimal(source);
+                } else if(source.rangeEquals(0, TARGET_DURATION)) {
+                    source.skip(TARGET_DURATION.size());
+                    lsp.targetDuration = (float) readDecimal(source);
+                }
+                skipLine(source);
+            } else if(first == '\n' || first == '\r') {
+                skipLine(source);
+            } else {
+                int seq = lsp.seq + index++;
+                lsp.totalDuration += duration;
+                lsp.lastSegDuration = duration;
+                if(seq >= nextSegment) {
+                    long length = lineEnd >= 0 ? lineEnd : buffer.size();
+                    lsp.segments.add(resolve(source.readUtf8(length)));
+                    lsp.segmentDurations.add(duration);
+                }
+                skipLine(source);
+                duration = 0;
+            }
+        }
+        lsp.segmentCount = index;
+        return lsp;
+    }
+
+    private String resolve(String line) {
+        int length = line.length();
+        while(length > 0 && Character.isWhitespace(line.charAt(length - 1))) {
+            length--;
+        }
+        if(line.startsWith("http")) {
+            return line.substring(0, length);
+        }
+        uri.setLength(0);
+        uri.append(baseUri).append(line, 0, length);
+        return uri.toString();
+    }
+
+    private void skipLine(BufferedSource source) throws IOException {
+        long lineEnd = source.indexOf((byte) '\n');
+        if(lineEnd >= 0) {
+            source.skip(lineEnd + 1);
+        } else {
+            source.skip(source.buffer().size());
+        }
+    }
+
+    /**
+     * Reads a non-negative decimal number like <code>10</code> or <code>4.000</code>
+     */
+    private double readDecimal(BufferedSource source) throws IOException {
+        long integer = 0;
+        while(source.request(1) && isDigit(source.buffer().getByte(0))) {
+            integer = integer * 10 + (source.readByte() - '0');
+        }
+        double fraction = 0;
+        if(source.request(1) && source.buffer().getByte(0) == '.') {
+            source.skip(1);
+            double scale = 0.1;
+            while(source.request(1) && isDigit(source.buffer().getByte(0))) {
+                fraction += (source.readByte() - '0') * scale;
+                scale /= 10;
+            }
+        }
+        return integer + fraction;
+    }
+
+    private boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,74 @@
+package ctbrec.recorder.download;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.recorder.download.AbstractHlsDownload.LiveStreamingPlaylist;
+
+/**
+ * Decides, when the media playlist of a live stream has to be loaded again. It predicts the
+ * publication of the next segment from the time, the playlist changed last, and the duration
+ * of the newest segment. If the segment is late, the playlist is polled in growing intervals,
+ * which are capped at the target duration.
+ */
+public class PlaylistPollScheduler {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(PlaylistPollScheduler.class);
+
+    static final long MIN_WAIT = 100;
+    static final long DEFAULT_TARGET_DURATION = 2000;
+    static final double BACKOFF_STEP = 0.1;
+    static final int MAX_BACKOFF_EXPONENT = 4;
+
+    private int lastEnd = -1;
+    private long lastChange = 0;
+    private long nextSegmentExpected = 0;
+    private int unchangedPolls = 0;
+
+    /**
+     * Updates the prediction with the playlist, which has just been loaded
+     * @return the time in milliseconds to wait until the playlist should be loaded again
+     */
+    public long update(LiveStreamingPlaylist lsp) {
+        return update(lsp, System.currentTimeMillis());
+    }
+
+    long update(LiveStreamingPlaylist lsp, long now) {
+        long targetDuration = lsp.targetDuration > 0 ? (long) (lsp.targetDuration * 1000) : DEFAULT_TARGET_DURATION;
+        // lsp.segments only contains the segments, which haven't been downloaded yet, so it can't tell a change
+        int end = lsp.getNextSequence();
+        if(end != lastEnd) {
+            // a new segment has been published -> the next one is expected after the duration of this one
+            long segmentDuration = lsp.lastSegDuration > 0 ? (long) (lsp.lastSegDuration * 1000) : targetDuration;
+            lastEnd = end;
+            lastChange = now;
+            unchangedPolls = 0;
+            nextSegmentExpected = lastChange + Math.min(segmentDuration, targetDuration);
+            long wait = Math.max(MIN_WAIT, nextSegmentExpected - now);
+            LOG.trace("Playlist changed... waiting for {}ms", wait);
+            return wait;
+        } else {
+            unchangedPolls++;
+            if(now < nextSegmentExpected) {
+                long wait = Math.max(MIN_WAIT, nextSegmentExpected - now);
+                LOG.trace("Playlist didn't change, next segment expected in {}ms", wait);
+                return wait;
+            }
+
+            // the segment is late -> back off exponentially up to the target duration
+            long step = Math.max(MIN_WAIT, (long) (targetDuration * BACKOFF_STEP));
+            int exponent = Math.min(unchangedPolls - 1, MAX_BACKOFF_EXPONENT);
+            long wait = Math.min(step << exponent, targetDuration);
+            LOG.trace("Playlist didn't change for {}ms... waiting for {}ms", now - lastChange, wait);
+            return wait;
+        }
+    }
+
+    public int getUnchangedPolls() {
+        return unchangedPolls;
+    }
+
+    public long getLastChange() {
+        return lastChange;
+    }
+}
@@ -0,0 +1,193 @@
+package ctbrec.recorder.download;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The playlist of a recording, which is built while the segments are downloaded. The durations of the segments
+ * are taken from the EXTINF tags of the live playlist, so the segments don't have to be demuxed afterwards.
+ * <p>
+ * The playlist file is rewritten regularly. It is written to a temporary file first, which then replaces the
+ * playlist, so that a reader never sees a partial playlist. While the recording is running, the playlist is an
+ * EVENT playlist without end tag. Finishing the recording only appends <code>#EXT-X-ENDLIST</code>.
+ */
+public class RollingPlaylist {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(RollingPlaylist.class);
+
+    public static final String FILE = "playlist.m3u8";
+    private static final String ENDLIST = "#EXT-X-ENDLIST";
+    private static final String EXTINF = "#EXTINF:";
+    /** minimum time between two rewrites of the playlist file */
+    private static final long WRITE_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    private File file;
+    /** tracks of the playlist file, which has been written before the recording has been resumed */
+    private String recoveredTracks = "";
+    private Set<String> recoveredUris = new HashSet<>();
+    private TreeMap<Integer, String> tracks = new TreeMap<>();
+    private float maxDuration = 0;
+    private boolean dirty = false;
+    private long lastWrite = 0;
+
+    public RollingPlaylist(File directory) {
+        file = new File(directory, FILE);
+    }
+
+    /**
+     * Continues an existing playlist file. Segments, which have been downloaded after the last rewrite of the
+     * file, are missing in the playlist.
+     */
+    public synchronized void recover() throws IOException {
+        if(!file.exists()) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        StringBuilder recovered = new StringBuilder();
+        boolean inTracks = false;
+        for (String line : lines) {
+            if(line.startsWith(EXTINF)) {
+                inTracks = true;
+                maxDuration = Math.max(maxDuration, parseDuration(line));
+            }
+            if(inTracks && !line.isEmpty() && !line.equals(ENDLIST)) {
+                recovered.append(line).append('\n');
+                if(!line.startsWith("#")) {
+                    recoveredUris.add(line);
+                }
+            }
+        }
+        recoveredTracks = recovered.toString();
+    }
+
+    /**
+     * @return true, if the playlist file, which has been continued with {@link #recover()}, contains the URI
+     */
+    public synchronized boolean isRecovered(String uri) {
+        return recoveredUris.contains(uri);
+    }
+
+    private static float parseDuration(String extinf) {
+        int end = extinf.indexOf(',');
+        try {
+            return Float.parseFloat(extinf.substring(EXTINF.length(), end >= 0 ? end : extinf.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Adds a segment, which has been written to a file of its own
+     */
+    public void add(int seq, String uri, float duration) {
+        addTrack(seq, String.format(Locale.US, "%s%.3f,\n%s\n", EXTINF, duration, uri), duration);
+    }
+
+    /**
+     * Adds a segment, which has been written to a part of a file
+     */
+    public void add(int seq, String uri, float duration, long offset, long length) {
+        addTrack(seq, String.format(Locale.US, "%s%.3f,\n#EXT-X-BYTERANGE:%d@%d\n%s\n", EXTINF, duration, length, offset, uri), duration);
+    }
+
+    private synchronized void addTrack(int seq, String track, float duration) {
+        tracks.put(seq, track);
+        maxDuration = Math.max(maxDuration, duration);
+        dirty = true;
+        if(System.currentTimeMillis() - lastWrite >= WRITE_INTERVAL) {
+            try {
+                write();
+            } catch (IOException e) {
+                // the playlist is written again with the next segment
+                LOG.error("Couldn't write playlist {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the segments, which have been added since the last rewrite
+     */
+    public synchronized void flush() throws IOException {
+        if(dirty) {
+            write();
+        }
+    }
+
+    private void write() throws IOException {
+        StringBuilder playlist = new StringBuilder();
+        playlist.append("#EXTM3U\n");
+        playlist.append("#EXT-X-VERSION:4\n");
+        playlist.append("#EXT-X-PLAYLIST-TYPE:EVENT\n");
+        playlist.append("#EXT-X-TARGETDURATION:").append((int) Math.ceil(maxDuration)).append('\n');
+        playlist.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        playlist.append(recoveredTracks);
+        for (String track : tracks.values()) {
+            playlist.append(track);
+        }
+
+        Path target = file.toPath();
+        Path tmp = new File(file.getParentFile(), FILE + ".tmp").toPath();
+        Files.write(tmp, playlist.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, REPLACE_EXISTING);
+        }
+        dirty = false;
+        lastWrite = System.currentTimeMillis();
+    }
+
+    /**
+     * Finishes the playlist of a recording by appending the end tag
+     *
+     * @return false, if the recording has no playlist, which has been built while downloading
+     */
+    public static boolean finish(File directory) throws IOException {
+        File playlist = new File(directory, FILE);
+        if(!playlist.exists()) {
+            return false;
+        }
+        if(!isFinished(directory)) {
+            Files.write(playlist.toPath(), (ENDLIST + "\n").getBytes(StandardCharsets.UTF_8), APPEND);
+        }
+        return true;
+    }
+
+    /**
+     * @return true, if the recording has a playlist, which ends with the end tag
+     */
+    public static boolean isFinished(File directory) {
+        File playlist = new File(directory, FILE);
+        if(!playlist.exists()) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(playlist, "r")) {
+            int tailLength = (int) Math.min(raf.length(), 64);
+            byte[] tail = new byte[tailLength];
+            raf.seek(raf.length() - tailLength);
+            raf.readFully(tail);
+            return new String(tail, StandardCharsets.US_ASCII).trim().endsWith(ENDLIST);
+        } catch (IOException e) {
+            LOG.debug("Couldn't read playlist {}", playlist, e);
+            return false;
+        }
+    }
+}
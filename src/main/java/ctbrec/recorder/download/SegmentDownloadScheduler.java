@@ -0,0 +1,212 @@
+package ctbrec.recorder.download;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.recorder.Threads;
+
+/**
+ * Recorder-wide executor for segment downloads. A fixed number of workers is shared
+ * by all downloads. Each download (the owner) gets its own queue and the workers
+ * serve the queues round-robin, so that a stream with a long backlog can't starve
+ * the other streams.
+ * <p>
+ * The queues are guarded by a {@link ReentrantLock} instead of the monitor of the scheduler, because
+ * a virtual thread, which waits on a monitor, pins its carrier thread.
+ */
+public class SegmentDownloadScheduler {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(SegmentDownloadScheduler.class);
+
+    private Map<Object, Queue<FutureTask<?>>> queues = new HashMap<>();
+    private Deque<Object> roundRobin = new ArrayDeque<>();
+    private List<Thread> workers = new ArrayList<>();
+    private AtomicInteger busyWorkers = new AtomicInteger();
+    private AtomicLong completedTasks = new AtomicLong();
+    private int queuedTasks = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskQueued = lock.newCondition();
+    private volatile boolean running = true;
+
+    public SegmentDownloadScheduler(int workerCount) {
+        workerCount = Math.max(1, workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = Threads.newThread("SegmentDownload-" + i, this::work);
+            workers.add(worker);
+            worker.start();
+        }
+        LOG.debug("Segment download scheduler started with {} workers", workerCount);
+    }
+
+    public <T> Future<T> submit(Object owner, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        lock.lock();
+        try {
+            if(!running) {
+                throw new RejectedExecutionException("Segment download scheduler has been shut down");
+            }
+            Queue<FutureTask<?>> queue = queues.get(owner);
+            if(queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(owner, queue);
+                roundRobin.add(owner);
+            }
+            queue.add(future);
+            queuedTasks++;
+            taskQueued.signal();
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Removes all queued tasks of the given owner. Tasks, which are already running, are not affected.
+     * @return the number of tasks, which have been removed from the queue
+     */
+    public int cancel(Object owner) {
+        lock.lock();
+        try {
+            Queue<FutureTask<?>> queue = queues.remove(owner);
+            if(queue == null) {
+                return 0;
+            }
+            roundRobin.remove(owner);
+            for (FutureTask<?> task : queue) {
+                task.cancel(false);
+            }
+            queuedTasks -= queue.size();
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FutureTask<?> take() throws InterruptedException {
+        lock.lock();
+        try {
+            while(running && roundRobin.isEmpty()) {
+                taskQueued.await();
+            }
+            if(!running) {
+                return null;
+            }
+
+            Object owner = roundRobin.poll();
+            Queue<FutureTask<?>> queue = queues.get(owner);
+            FutureTask<?> task = queue.poll();
+            queuedTasks--;
+            if(queue.isEmpty()) {
+                queues.remove(owner);
+            } else {
+                // move to the end of the line, so that the other downloads get their turn
+                roundRobin.add(owner);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while(running) {
+            FutureTask<?> task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if(task == null) {
+                break;
+            }
+
+            busyWorkers.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                busyWorkers.decrementAndGet();
+                completedTasks.incrementAndGet();
+            }
+        }
+        LOG.trace("{} terminated", Thread.currentThread().getName());
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queuedTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth(Object owner) {
+        lock.lock();
+        try {
+            Queue<FutureTask<?>> queue = queues.get(owner);
+            return queue != null ? queue.size() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    public int getBusyWorkers() {
+        return busyWorkers.get();
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    /**
+     * @return the ratio of busy workers to all workers in the range 0.0 - 1.0
+     */
+    public double getUtilisation() {
+        return (double) getBusyWorkers() / getWorkerCount();
+    }
+
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            for (Queue<FutureTask<?>> queue : queues.values()) {
+                for (FutureTask<?> task : queue) {
+                    task.cancel(false);
+                }
+            }
+            queues.clear();
+            roundRobin.clear();
+            queuedTasks = 0;
+            taskQueued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LOG.debug("Segment download scheduler shut down");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d workers busy, %d segments queued, %d segments completed",
+                getBusyWorkers(), getWorkerCount(), getQueueDepth(), getCompletedTasks());
+    }
+}
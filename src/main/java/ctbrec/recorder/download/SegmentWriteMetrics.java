@@ -0,0 +1,99 @@
+package ctbrec.recorder.download;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recorder-wide metrics of the segment persistence: the bytes written to disk and the heap
+ * allocated by the writing thread per segment.
+ */
+public class SegmentWriteMetrics {
+
+    private static SegmentWriteMetrics instance = new SegmentWriteMetrics();
+
+    private LongAdder bytesWritten = new LongAdder();
+    private LongAdder segmentsWritten = new LongAdder();
+    private LongAdder allocatedBytes = new LongAdder();
+    private LongAdder allocationSamples = new LongAdder();
+
+    private long lastSampleTime = System.nanoTime();
+    private long lastSampleBytes = 0;
+    private volatile double bytesPerSecond = 0;
+
+    private SegmentWriteMetrics() {}
+
+    public static SegmentWriteMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param allocated the bytes allocated while writing the segment or a negative value, if not available
+     */
+    public void segmentWritten(long bytes, long allocated) {
+        bytesWritten.add(bytes);
+        segmentsWritten.increment();
+        if(allocated >= 0) {
+            allocatedBytes.add(allocated);
+            allocationSamples.increment();
+        }
+    }
+
+    /**
+     * Updates the write rate with the bytes written since the last call
+     */
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        long bytes = bytesWritten.sum();
+        double seconds = (now - lastSampleTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        if(seconds > 0) {
+            bytesPerSecond = (bytes - lastSampleBytes) / seconds;
+        }
+        lastSampleTime = now;
+        lastSampleBytes = bytes;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getSegmentsWritten() {
+        return segmentsWritten.sum();
+    }
+
+    /**
+     * @return the write rate determined by the last call of {@link #sample()}
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return the average number of bytes allocated per segment or -1, if the JVM can't measure the allocation
+     */
+    public long getAllocationPerSegment() {
+        long samples = allocationSamples.sum();
+        return samples > 0 ? allocatedBytes.sum() / samples : -1;
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far or -1, if the JVM can't measure it
+     */
+    public static long currentThreadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if(sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d segments, %d bytes written, %.1f KiB/s, %d bytes allocated per segment",
+                getSegmentsWritten(), getBytesWritten(), getBytesPerSecond() / 1024, getAllocationPerSegment());
+    }
+}
@@ -0,0 +1,245 @@
+package ctbrec.recorder.download;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okio.Buffer;
+
+/**
+ * Appends the segments of a live stream to one file in the order of their sequence numbers.
+ * Segments are downloaded in parallel and complete in any order, so completed segments are
+ * held back in a reorder buffer until all segments before them have been written or have failed.
+ * The size of the reorder buffer is limited. If it is exceeded, the writer doesn't wait any longer for the
+ * oldest segments, which are still downloading. They are skipped, so that the buffered segments can be written.
+ * <p>
+ * For every written segment a line <code>sequence offset length duration</code> is appended to
+ * an index file and the segment is added to the {@link RollingPlaylist} of the recording with its byte range.
+ */
+public class SingleFileSegmentWriter implements Closeable {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(SingleFileSegmentWriter.class);
+
+    public static final String INDEX_FILE = "segments.idx";
+
+    private FileChannel channel;
+    private String filename;
+    private RollingPlaylist playlist;
+    private BufferedWriter index;
+    private long offset;
+    private long maxBuffered;
+    private long buffered = 0;
+    private TreeMap<Integer, Slot> slots = new TreeMap<>();
+    private boolean finishing = false;
+    private boolean closed = false;
+    private int lastSequence = -1;
+
+    /**
+     * Opens the writer. If the files exist already, the output is continued after the last segment
+     * in the index. Data, which has been written after that segment, is discarded. The segments in the index are
+     * added to the playlist again, because it might not have been written completely.
+     *
+     * @param maxBuffered maximum number of bytes, which are held back in the reorder buffer
+     */
+    public SingleFileSegmentWriter(File targetFile, File indexFile, RollingPlaylist playlist, long maxBuffered) throws IOException {
+        this.filename = targetFile.getName();
+        this.playlist = playlist;
+        this.maxBuffered = maxBuffered;
+        offset = recoverIndex(indexFile);
+        channel = FileChannel.open(targetFile.toPath(), CREATE, WRITE);
+        if(channel.size() > offset) {
+            LOG.debug("Discarding {} bytes after the last indexed segment of {}", channel.size() - offset, targetFile);
+            channel.truncate(offset);
+        }
+        index = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(FileChannel.open(indexFile.toPath(), CREATE, WRITE, APPEND)), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the index, removes an incomplete last line and determines the end of the last segment
+     */
+    private long recoverIndex(File indexFile) throws IOException {
+        if(!indexFile.exists()) {
+            return 0;
+        }
+        byte[] content = Files.readAllBytes(indexFile.toPath());
+        long end = 0;
+        long validLength = 0;
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if(content[i] == '\n') {
+                String[] fields = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8).trim().split(" ");
+                if(fields.length == 4) {
+                    try {
+                        int seq = Integer.parseInt(fields[0]);
+                        long start = Long.parseLong(fields[1]);
+                        long length = Long.parseLong(fields[2]);
+                        float duration = Float.parseFloat(fields[3]);
+                        end = start + length;
+                        playlist.add(seq, filename, duration, start, length);
+                        lastSequence = seq;
+                        validLength = i + 1;
+                    } catch(NumberFormatException e) {
+                        // skip malformed line
+                    }
+                }
+                lineStart = i + 1;
+            }
+        }
+        if(indexFile.length() > validLength) {
+            try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), WRITE)) {
+                indexChannel.truncate(validLength);
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Reserves the place of a segment in the output. Has to be called in the order of the sequence numbers,
+     * before the segment is downloaded.
+     */
+    public synchronized void queued(int seq) {
+        if(!slots.containsKey(seq)) {
+            slots.put(seq, new Slot());
+        }
+    }
+
+    public synchronized void completed(int seq, Buffer data, float duration) throws IOException {
+        Slot slot = slots.get(seq);
+        if(slot == null) {
+            LOG.debug("Ignoring segment {}, it is not expected (anymore)", seq);
+            return;
+        }
+        slot.data = data;
+        slot.duration = duration;
+        slot.done = true;
+        buffered += data.size();
+        flush();
+        while(buffered > maxBuffered && !slots.isEmpty()) {
+            Entry<Integer, Slot> first = slots.firstEntry();
+            if(!first.getValue().done) {
+                LOG.warn("Reorder buffer of {} is full, skipping segment {}, which is still downloading", filename, first.getKey());
+                slots.remove(first.getKey());
+            }
+            flush();
+        }
+    }
+
+    public synchronized void failed(int seq) throws IOException {
+        Slot slot = slots.get(seq);
+        if(slot != null) {
+            slot.done = true;
+            flush();
+        }
+    }
+
+    /**
+     * Closes the writer as soon as all queued segments have completed or failed
+     */
+    public synchronized void finish() throws IOException {
+        finishing = true;
+        flush();
+    }
+
+    /**
+     * Writes the segments in the reorder buffer and closes the writer. Segments, which are still downloading,
+     * are skipped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        try {
+            for (Entry<Integer, Slot> entry : slots.entrySet()) {
+                Slot slot = entry.getValue();
+                if(slot.data != null) {
+                    write(entry.getKey(), slot);
+                }
+            }
+        } finally {
+            closed = true;
+            slots.clear();
+            buffered = 0;
+            closeOutput();
+        }
+    }
+
+    private void closeOutput() throws IOException {
+        try {
+            playlist.flush();
+        } finally {
+            try {
+                index.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * @return the sequence number of the last segment, which has been written, or -1
+     */
+    public synchronized int getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void flush() throws IOException {
+        if(closed) {
+            return;
+        }
+        while(!slots.isEmpty()) {
+            Entry<Integer, Slot> first = slots.firstEntry();
+            Slot slot = first.getValue();
+            if(!slot.done) {
+                break;
+            }
+            slots.remove(first.getKey());
+            if(slot.data != null) {
+                write(first.getKey(), slot);
+            }
+        }
+        if(finishing && slots.isEmpty()) {
+            close();
+        }
+    }
+
+    private void write(int seq, Slot slot) throws IOException {
+        long length = slot.data.size();
+        buffered -= length;
+        long written = 0;
+        while(written < length) {
+            written += channel.transferFrom(slot.data, offset + written, length - written);
+        }
+        index.write(String.format(Locale.US, "%d %d %d %.3f%n", seq, offset, length, slot.duration));
+        index.flush();
+        playlist.add(seq, filename, slot.duration, offset, length);
+        offset += length;
+        lastSequence = seq;
+    }
+
+    private static class Slot {
+        private boolean done = false;
+        private Buffer data;
+        private float duration;
+    }
+}
@@ -0,0 +1,205 @@
+package ctbrec.recorder.download;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * Checks the integrity of an MPEG transport stream segment, while it is read. Every packet has to start with
+ * the sync byte and must not be flagged as erroneous, the continuity counters of all PIDs have to be
+ * consecutive and the segment has to contain a PAT and a PMT. The segment must consist of complete packets.
+ * <p>
+ * If the segment is invalid, the read fails with an {@link InvalidSegmentException}, so that the segment
+ * can be requested again. In lenient mode, which is used for the last attempt, the data is passed on and
+ * the first error is only remembered, because a segment with a glitch is better than a gap in the recording.
+ * <p>
+ * The data is inspected in place in the segments of the buffer. Only the packet headers and the PAT are copied,
+ * so the validation doesn't add another copy of the segment.
+ */
+public class TsValidator extends ForwardingSource {
+
+    private static final int PACKET_SIZE = 188;
+    /** the header and the first bytes of the adaptation field, which are needed to check a packet */
+    private static final int HEADER_SIZE = 6;
+    private static final int SYNC_BYTE = 0x47;
+    private static final int PAT_PID = 0;
+    private static final int NULL_PID = 0x1FFF;
+
+    private byte[] packet = new byte[PACKET_SIZE];
+    private int packetFill = 0;
+    private long packets = 0;
+    private byte[] continuityCounters = new byte[NULL_PID + 1];
+    private Set<Integer> pmtPids = new HashSet<>();
+    private boolean patFound = false;
+    private boolean pmtFound = false;
+    private boolean finished = false;
+    private boolean strict;
+    private InvalidSegmentException error;
+    private Buffer.UnsafeCursor cursor = new Buffer.UnsafeCursor();
+
+    public TsValidator(Source delegate) {
+        this(delegate, true);
+    }
+
+    /**
+     * @param strict true, if the read fails on an error, false, if the error is only remembered
+     */
+    public TsValidator(Source delegate, boolean strict) {
+        super(delegate);
+        this.strict = strict;
+        Arrays.fill(continuityCounters, (byte) -1);
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if(error != null) {
+            // the segment is invalid already, the rest is not checked
+            return read;
+        }
+        try {
+            if(read > 0) {
+                inspect(sink, sink.size() - read);
+            } else if(read == -1 && !finished) {
+                finished = true;
+                checkComplete();
+            }
+        } catch(InvalidSegmentException e) {
+            error = e;
+            if(strict) {
+                throw e;
+            }
+        }
+        return read;
+    }
+
+    /**
+     * @return the first error found in lenient mode or null, if the segment is valid
+     */
+    public InvalidSegmentException getError() {
+        return error;
+    }
+
+    private void inspect(Buffer sink, long offset) throws InvalidSegmentException {
+        sink.readUnsafe(cursor);
+        try {
+            for (int n = cursor.seek(offset); n != -1; n = cursor.next()) {
+                inspect(cursor.data, cursor.start, cursor.end);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void inspect(byte[] data, int pos, int end) throws InvalidSegmentException {
+        while(pos < end) {
+            int n;
+            if(packetFill < HEADER_SIZE) {
+                n = Math.min(end - pos, HEADER_SIZE - packetFill);
+                System.arraycopy(data, pos, packet, packetFill, n);
+            } else if(getPid() == PAT_PID) {
+                // the PAT is parsed, so the whole packet is needed
+                n = Math.min(end - pos, PACKET_SIZE - packetFill);
+                System.arraycopy(data, pos, packet, packetFill, n);
+            } else {
+                n = Math.min(end - pos, PACKET_SIZE - packetFill);
+            }
+            packetFill += n;
+            pos += n;
+            if(packetFill == PACKET_SIZE) {
+                checkPacket();
+                packetFill = 0;
+            }
+        }
+    }
+
+    private int getPid() {
+        return ((packet[1] & 0x1F) << 8) | (packet[2] & 0xFF);
+    }
+
+    private void checkPacket() throws InvalidSegmentException {
+        if((packet[0] & 0xFF) != SYNC_BYTE) {
+            throw new InvalidSegmentException("Lost sync in packet " + packets);
+        }
+        if((packet[1] & 0x80) != 0) {
+            throw new InvalidSegmentException("Transport error in packet " + packets);
+        }
+        int pid = getPid();
+        boolean payloadUnitStart = (packet[1] & 0x40) != 0;
+        int adaptationFieldControl = (packet[3] >> 4) & 0x03;
+        int continuityCounter = packet[3] & 0x0F;
+        boolean hasAdaptationField = (adaptationFieldControl & 0x02) != 0;
+        boolean hasPayload = (adaptationFieldControl & 0x01) != 0;
+        if(adaptationFieldControl == 0) {
+            throw new InvalidSegmentException("Invalid adaptation field control in packet " + packets);
+        }
+
+        int payloadOffset = 4;
+        boolean discontinuity = false;
+        if(hasAdaptationField) {
+            int adaptationFieldLength = packet[4] & 0xFF;
+            discontinuity = adaptationFieldLength > 0 && (packet[5] & 0x80) != 0;
+            payloadOffset = 5 + adaptationFieldLength;
+            if(payloadOffset > PACKET_SIZE) {
+                throw new InvalidSegmentException("Invalid adaptation field length in packet " + packets);
+            }
+        }
+
+        if(pid != NULL_PID && hasPayload) {
+            int last = continuityCounters[pid];
+            // a packet may be sent twice, so the same counter is allowed
+            if(last >= 0 && !discontinuity && continuityCounter != last && continuityCounter != ((last + 1) & 0x0F)) {
+                throw new InvalidSegmentException("Continuity error for PID " + pid + " in packet " + packets + ": " + last + " -> " + continuityCounter);
+            }
+            continuityCounters[pid] = (byte) continuityCounter;
+
+            if(pid == PAT_PID && payloadUnitStart) {
+                parsePat(payloadOffset);
+            } else if(pmtPids.contains(pid)) {
+                pmtFound = true;
+            }
+        }
+        packets++;
+    }
+
+    private void parsePat(int payloadOffset) throws InvalidSegmentException {
+        int table = payloadOffset + 1 + (packet[payloadOffset] & 0xFF);
+        if(table + 8 > PACKET_SIZE || packet[table] != 0x00) {
+            throw new InvalidSegmentException("Invalid PAT in packet " + packets);
+        }
+        int sectionLength = ((packet[table + 1] & 0x0F) << 8) | (packet[table + 2] & 0xFF);
+        // the program loop follows the 8 byte header and is followed by the 4 byte CRC
+        int end = Math.min(table + 3 + sectionLength - 4, PACKET_SIZE);
+        for (int i = table + 8; i + 4 <= end; i += 4) {
+            int programNumber = ((packet[i] & 0xFF) << 8) | (packet[i + 1] & 0xFF);
+            int pid = ((packet[i + 2] & 0x1F) << 8) | (packet[i + 3] & 0xFF);
+            if(programNumber != 0) {
+                pmtPids.add(pid);
+            }
+        }
+        patFound = true;
+    }
+
+    private void checkComplete() throws InvalidSegmentException {
+        if(packetFill != 0) {
+            throw new InvalidSegmentException("Incomplete packet at the end of the segment");
+        }
+        if(!patFound) {
+            throw new InvalidSegmentException("Segment doesn't contain a PAT");
+        }
+        if(!pmtFound) {
+            throw new InvalidSegmentException("Segment doesn't contain a PMT");
+        }
+    }
+
+    public static class InvalidSegmentException extends IOException {
+        public InvalidSegmentException(String msg) {
+            super(msg);
+        }
+    }
+}
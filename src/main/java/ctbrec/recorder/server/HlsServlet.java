@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -21,6 +24,8 @@ public class HlsServlet extends AbstractCtbrecServlet {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(HlsServlet.class);
 
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
     private Config config;
 
     public HlsServlet(Config config) {
@@ -75,7 +80,13 @@ public class HlsServlet extends AbstractCtbrecServlet {
     }
 
     private void serveSegment(HttpServletRequest req, HttpServletResponse resp, File requestedFile) throws FileNotFoundException, IOException {
-        serveFile(resp, requestedFile, "application/octet-stream");
+        resp.setHeader("Accept-Ranges", "bytes");
+        String range = req.getHeader("Range");
+        if(range != null) {
+            serveRange(resp, requestedFile, "application/octet-stream", range);
+        } else {
+            serveFile(resp, requestedFile, "application/octet-stream");
+        }
     }
 
     private void servePlaylist(HttpServletRequest req, HttpServletResponse resp, File requestedFile) throws FileNotFoundException, IOException, ParseException, PlaylistException {
@@ -96,6 +107,54 @@ public class HlsServlet extends AbstractCtbrecServlet {
         }
     }
 
+    /**
+     * Serves a part of a file. The playlists of single file recordings address the segments by byte ranges.
+     */
+    private void serveRange(HttpServletResponse resp, File file, String contentType, String range) throws IOException {
+        Matcher m = RANGE.matcher(range);
+        long fileLength = file.length();
+        if(!m.matches() || m.group(1).isEmpty() && m.group(2).isEmpty()) {
+            resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            resp.setHeader("Content-Range", "bytes */" + fileLength);
+            return;
+        }
+
+        long start;
+        long end;
+        if(m.group(1).isEmpty()) {
+            // suffix range: the last n bytes
+            start = Math.max(0, fileLength - Long.parseLong(m.group(2)));
+            end = fileLength - 1;
+        } else {
+            start = Long.parseLong(m.group(1));
+            end = m.group(2).isEmpty() ? fileLength - 1 : Math.min(Long.parseLong(m.group(2)), fileLength - 1);
+        }
+        if(start > end) {
+            resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            resp.setHeader("Content-Range", "bytes */" + fileLength);
+            return;
+        }
+
+        LOG.trace("Serving bytes {}-{} of {}", start, end, file.getAbsolutePath());
+        long length = end - start + 1;
+        resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + fileLength);
+        resp.setContentLengthLong(length);
+        resp.setContentType(contentType);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start);
+            byte[] buffer = new byte[1024 * 100];
+            while(length > 0) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, length));
+                if(read < 0) {
+                    break;
+                }
+                resp.getOutputStream().write(buffer, 0, read);
+                length -= read;
+            }
+        }
+    }
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         doGet(req, resp);
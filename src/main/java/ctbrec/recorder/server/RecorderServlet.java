@@ -24,6 +24,7 @@ import ctbrec.InstantJsonAdapter;
 import ctbrec.Model;
 import ctbrec.Recording;
 import ctbrec.recorder.Recorder;
+import ctbrec.recorder.download.DownloadStats;
 
 public class RecorderServlet extends AbstractCtbrecServlet {
 
@@ -69,6 +70,11 @@ public class RecorderServlet extends AbstractCtbrecServlet {
                     recorder.stopRecording(request.model);
                     resp.getWriter().write(response);
                     break;
+                case "priority":
+                    recorder.setPriority(request.model, request.model.getPriority());
+                    response = "{\"status\": \"success\", \"msg\": \"Priority changed\"}";
+                    resp.getWriter().write(response);
+                    break;
                 case "list":
                     resp.getWriter().write("{\"status\": \"success\", \"msg\": \"List of models\", \"models\": [");
                     JsonAdapter<Model> modelAdapter = moshi.adapter(Model.class);
@@ -95,6 +101,19 @@ public class RecorderServlet extends AbstractCtbrecServlet {
                     }
                     resp.getWriter().write("]}");
                     break;
+                case "stats":
+                    resp.getWriter().write("{\"status\": \"success\", \"msg\": \"Download statistics\", \"stats\": [");
+                    JsonAdapter<DownloadStats> statsAdapter = moshi.adapter(DownloadStats.class);
+                    List<DownloadStats> stats = recorder.getDownloadStats();
+                    for (Iterator<DownloadStats> iterator = stats.iterator(); iterator.hasNext();) {
+                        DownloadStats downloadStats = iterator.next();
+                        resp.getWriter().write(statsAdapter.toJson(downloadStats));
+                        if (iterator.hasNext()) {
+                            resp.getWriter().write(',');
+                        }
+                    }
+                    resp.getWriter().write("]}");
+                    break;
                 case "delete":
                     String path = request.recording;
                     Recording rec = new Recording(path);
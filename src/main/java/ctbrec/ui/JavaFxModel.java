@@ -3,14 +3,18 @@ package ctbrec.ui;
 import java.util.List;
 
 import ctbrec.Model;
+import ctbrec.recorder.download.DownloadStats;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 
 /**
  * Just a wrapper for Model, which augments it with JavaFX value binding properties, so that UI widgets get updated proeprly
  */
 public class JavaFxModel extends Model {
     private transient BooleanProperty onlineProperty = new SimpleBooleanProperty();
+    private transient StringProperty downloadProperty = new SimpleStringProperty("");
 
     private Model delegate;
 
@@ -70,6 +74,16 @@ public class JavaFxModel extends Model {
         this.onlineProperty.set(online);
     }
 
+    @Override
+    public int getPriority() {
+        return delegate.getPriority();
+    }
+
+    @Override
+    public void setPriority(int priority) {
+        delegate.setPriority(priority);
+    }
+
     @Override
     public int hashCode() {
         return delegate.hashCode();
@@ -89,6 +103,18 @@ public class JavaFxModel extends Model {
         return onlineProperty;
     }
 
+    public StringProperty getDownloadProperty() {
+        return downloadProperty;
+    }
+
+    public void setDownloadStats(DownloadStats stats) {
+        if(stats == null) {
+            downloadProperty.set("");
+        } else {
+            downloadProperty.set(String.format("%.0f KiB/s, lag %d, missed %d", stats.bytesPerSecond / 1024, stats.segmentLag, stats.missedSegments));
+        }
+    }
+
     Model getDelegate() {
         return delegate;
     }
@@ -58,6 +58,9 @@ public class JavaFxRecording extends Recording {
         case GENERATING_PLAYLIST:
             statusProperty.set("generating playlist");
             break;
+        case QUEUED:
+            statusProperty.set("waiting for post-processing");
+            break;
         case FINISHED:
             statusProperty.set("finished");
             break;
@@ -78,8 +81,41 @@ public class JavaFxRecording extends Recording {
     @Override
     public void setProgress(int progress) {
         delegate.setProgress(progress);
-        if(progress >= 0) {
-            progressProperty.set(progress+"%");
+        updateProgressProperty();
+    }
+
+    @Override
+    public int getQueuePosition() {
+        return delegate.getQueuePosition();
+    }
+
+    @Override
+    public void setQueuePosition(int queuePosition) {
+        delegate.setQueuePosition(queuePosition);
+        updateProgressProperty();
+    }
+
+    @Override
+    public long getEstimatedCompletion() {
+        return delegate.getEstimatedCompletion();
+    }
+
+    @Override
+    public void setEstimatedCompletion(long estimatedCompletion) {
+        delegate.setEstimatedCompletion(estimatedCompletion);
+        updateProgressProperty();
+    }
+
+    private void updateProgressProperty() {
+        if(getStatus() == STATUS.QUEUED && getQueuePosition() > 0) {
+            String text = "#" + getQueuePosition();
+            if(getEstimatedCompletion() > 0) {
+                long minutes = Math.max(1, (getEstimatedCompletion() - System.currentTimeMillis()) / 60_000);
+                text += " (~" + minutes + " min)";
+            }
+            progressProperty.set(text);
+        } else if(getProgress() >= 0) {
+            progressProperty.set(getProgress()+"%");
         } else {
             progressProperty.set("");
         }
@@ -115,6 +151,8 @@ public class JavaFxRecording extends Recording {
     public void update(Recording updated) {
         if(getStatus() != STATUS.DOWNLOADING && getStatus() != STATUS.MERGING) {
             setStatus(updated.getStatus());
+            setQueuePosition(updated.getQueuePosition());
+            setEstimatedCompletion(updated.getEstimatedCompletion());
             setProgress(updated.getProgress());
         }
         setSizeInByte(updated.getSizeInByte());
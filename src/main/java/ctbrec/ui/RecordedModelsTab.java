@@ -3,8 +3,12 @@ package ctbrec.ui;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -15,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import ctbrec.Model;
 import ctbrec.recorder.Recorder;
+import ctbrec.recorder.download.DownloadStats;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -32,6 +37,7 @@ import javafx.scene.control.Tab;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.Clipboard;
@@ -48,6 +54,7 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
 
     private ScheduledService<List<Model>> updateService;
     private Recorder recorder;
+    private volatile Map<String, DownloadStats> downloadStats = Collections.emptyMap();
 
     FlowPane grid = new FlowPane();
     ScrollPane scrollPane = new ScrollPane();
@@ -89,7 +96,10 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
         online.setCellValueFactory((cdf) -> cdf.getValue().getOnlineProperty());
         online.setCellFactory(CheckBoxTableCell.forTableColumn(online));
         online.setPrefWidth(60);
-        table.getColumns().addAll(name, url, online);
+        TableColumn<JavaFxModel, String> download = new TableColumn<>("Download");
+        download.setCellValueFactory((cdf) -> cdf.getValue().getDownloadProperty());
+        download.setPrefWidth(220);
+        table.getColumns().addAll(name, url, online, download);
         table.setItems(observableModels);
         table.addEventHandler(ContextMenuEvent.CONTEXT_MENU_REQUESTED, event -> {
             popup = createContextMenu();
@@ -138,13 +148,18 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
             if(models == null) {
                 return;
             }
+            Map<String, DownloadStats> stats = downloadStats;
             for (Model model : models) {
+                JavaFxModel javaFxModel;
                 if (!observableModels.contains(model)) {
-                    observableModels.add(new JavaFxModel(model));
+                    javaFxModel = new JavaFxModel(model);
+                    observableModels.add(javaFxModel);
                 } else {
                     int index = observableModels.indexOf(model);
-                    observableModels.get(index).setOnline(model.isOnline());
+                    javaFxModel = observableModels.get(index);
+                    javaFxModel.setOnline(model.isOnline());
                 }
+                javaFxModel.setDownloadStats(stats.get(model.getName()));
             }
             for (Iterator<JavaFxModel> iterator = observableModels.iterator(); iterator.hasNext();) {
                 Model model = iterator.next();
@@ -167,6 +182,7 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
                     @Override
                     public List<Model> call() {
                         LOG.debug("Updating recorded models");
+                        updateDownloadStats();
                         return recorder.getModelsRecording();
                     }
                 };
@@ -185,6 +201,18 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
         return updateService;
     }
 
+    private void updateDownloadStats() {
+        try {
+            Map<String, DownloadStats> stats = new HashMap<>();
+            for (DownloadStats downloadStats : recorder.getDownloadStats()) {
+                stats.put(downloadStats.model, downloadStats);
+            }
+            downloadStats = stats;
+        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | IllegalStateException e) {
+            LOG.info("Couldn't get download statistics from recorder", e);
+        }
+    }
+
     @Override
     public void selected() {
         if (updateService != null) {
@@ -218,7 +246,51 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
         MenuItem openInPlayer = new MenuItem("Open in Player");
         openInPlayer.setOnAction((e) -> Player.play(table.getSelectionModel().getSelectedItem().getUrl()));
 
-        return new ContextMenu(stop, copyUrl, openInBrowser, openInPlayer);
+        MenuItem setPriority = new MenuItem("Set Priority");
+        setPriority.setOnAction((e) -> setPriorityAction());
+
+        return new ContextMenu(stop, copyUrl, openInBrowser, openInPlayer, setPriority);
+    }
+
+    private void setPriorityAction() {
+        JavaFxModel selected = table.getSelectionModel().getSelectedItem();
+        if (selected == null) {
+            return;
+        }
+        TextInputDialog dialog = new TextInputDialog(Integer.toString(selected.getPriority()));
+        dialog.setTitle("Priority");
+        dialog.setHeaderText("Priority of " + selected.getName() + " (" + Model.MIN_PRIORITY + " - " + Model.MAX_PRIORITY + ")");
+        dialog.setContentText("If the bandwidth is limited, recordings with a low priority are throttled first");
+        Optional<String> result = dialog.showAndWait();
+        if (result.isPresent()) {
+            try {
+                int priority = Math.max(Model.MIN_PRIORITY, Math.min(Model.MAX_PRIORITY, Integer.parseInt(result.get().trim())));
+                Model model = selected.getDelegate();
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            recorder.setPriority(model, priority);
+                        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | IllegalStateException e) {
+                            LOG.error("Couldn't change priority", e);
+                            Platform.runLater(() -> {
+                                Alert alert = new AutosizeAlert(Alert.AlertType.ERROR);
+                                alert.setTitle("Error");
+                                alert.setHeaderText("Couldn't change priority");
+                                alert.setContentText("Error while changing the priority: " + e.getLocalizedMessage());
+                                alert.showAndWait();
+                            });
+                        }
+                    }
+                }.start();
+            } catch (NumberFormatException e) {
+                Alert alert = new AutosizeAlert(Alert.AlertType.ERROR);
+                alert.setTitle("Error");
+                alert.setHeaderText("Invalid priority");
+                alert.setContentText(result.get() + " is not a number");
+                alert.showAndWait();
+            }
+        }
     }
 
     private void stopAction() {
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import com.iheartradio.m3u8.Encoding;
 import com.iheartradio.m3u8.Format;
 import com.iheartradio.m3u8.ParseException;
+import com.iheartradio.m3u8.ParsingMode;
 import com.iheartradio.m3u8.PlaylistException;
 import com.iheartradio.m3u8.PlaylistParser;
 import com.iheartradio.m3u8.data.MediaPlaylist;
@@ -340,14 +341,17 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
             String hlsBase = "http://" + config.getSettings().httpServer + ":" + config.getSettings().httpPort + "/hls";
             URL url = new URL(hlsBase + "/" + recording.getPath() + "/playlist.m3u8");
             LOG.info("Downloading {}", recording.getPath());
-            PlaylistParser parser = new PlaylistParser(url.openStream(), Format.EXT_M3U, Encoding.UTF_8);
+            // lenient, because the playlists of single file recordings contain byte ranges
+            PlaylistParser parser = new PlaylistParser(url.openStream(), Format.EXT_M3U, Encoding.UTF_8, ParsingMode.LENIENT);
             Playlist playlist = parser.parse();
             MediaPlaylist mediaPlaylist = playlist.getMediaPlaylist();
             List<TrackData> tracks = mediaPlaylist.getTracks();
             List<String> segmentUris = new ArrayList<>();
             for (TrackData trackData : tracks) {
                 String segmentUri = hlsBase + "/" + recording.getPath() + "/" + trackData.getUri();
-                segmentUris.add(segmentUri);
+                if(!segmentUris.contains(segmentUri)) {
+                    segmentUris.add(segmentUri);
+                }
             }
 
             Thread t = new Thread() {
@@ -214,7 +214,6 @@ public class ThumbCell extends StackPane {
         if(res == null) {
             ThumbOverviewTab.threadPool.submit(() -> {
                 try {
-                    Thread.sleep(500); // throttle down, so that we don't do too many requests
                     int[] resolution = Chaturbate.getResolution(model, client);
                     resolutions.put(model.getName(), resolution);
                     if (resolution[1] > 0) {
@@ -228,7 +227,7 @@ public class ThumbCell extends StackPane {
                             resolutionBackground.setWidth(resolutionTag.getBoundsInLocal().getWidth() + 4);
                         });
                     }
-                } catch (IOException | ParseException | PlaylistException | InterruptedException e) {
+                } catch (IOException | ParseException | PlaylistException e) {
                     LOG.error("Coulnd't get resolution for model {}", model, e);
                 } finally {
                     ThumbOverviewTab.resolutionProcessing.remove(model);
@@ -0,0 +1,47 @@
+package ctbrec.recorder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ctbrec.Config;
+
+/**
+ * Creates the threads for the blocking tasks of the recorder (monitors, downloads and
+ * post-processing).
+ * <p>
+ * This is the Java 21 implementation of the multi-release jar. It runs the tasks on virtual
+ * threads, if <code>virtualThreads</code> is enabled in the settings, so that thousands of
+ * blocking streams don't exhaust the native threads.
+ */
+public class Threads {
+
+    private Threads() {}
+
+    public static boolean isVirtualThreadsEnabled() {
+        return Config.getInstance().getSettings().virtualThreads;
+    }
+
+    /**
+     * Creates a new daemon thread, which is not started yet
+     */
+    public static Thread newThread(String name, Runnable task) {
+        if(isVirtualThreadsEnabled()) {
+            return Thread.ofVirtual().name(name).unstarted(task);
+        } else {
+            return Thread.ofPlatform().name(name).daemon(true).unstarted(task);
+        }
+    }
+
+    /**
+     * Creates an executor, which runs every task in its own thread
+     */
+    public static ExecutorService newTaskExecutor(String namePrefix) {
+        if(isVirtualThreadsEnabled()) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix + "-", 0).factory());
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newCachedThreadPool((r) -> newThread(namePrefix + "-" + threadNumber.getAndIncrement(), r));
+        }
+    }
+}